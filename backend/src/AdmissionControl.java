@@ -0,0 +1,285 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Load shedding in front of the handlers, so a burst on an expensive endpoint (/api/crawl,
+// a misspelled /api/spellcheck scanning the whole vocabulary) cannot starve cheap interactive
+// ones. Each request passes two gates:
+//   1. a per-client token bucket for the endpoint, failing fast with 429
+//   2. an adaptive concurrency limit for the endpoint, failing fast with 503 once requests
+//      have been queueing longer than the endpoint's target delay
+// Clients are told apart by remote address, or behind a proxy by a header the proxy sets.
+public class AdmissionControl {
+
+    private static final int MAX_TRACKED_CLIENTS = 10000;
+
+    public static class Policy {
+        final int maxConcurrent;
+        final double tokensPerSecond;
+        final int burst;
+        final long targetDelayMs;
+
+        // maxConcurrent <= 0 or tokensPerSecond <= 0 turns that gate off
+        public Policy(int maxConcurrent, double tokensPerSecond, int burst, long targetDelayMs) {
+            this.maxConcurrent = maxConcurrent;
+            this.tokensPerSecond = tokensPerSecond;
+            this.burst = burst;
+            this.targetDelayMs = targetDelayMs;
+        }
+    }
+
+    private final Map<String, String> rejectHeaders;
+    private final String clientHeader;
+    private final Map<String, EndpointStats> stats = new ConcurrentHashMap<>();
+
+    // rejectHeaders are added to 429/503 responses, e.g. CORS headers
+    public AdmissionControl(Map<String, String> rejectHeaders) {
+        this(rejectHeaders, null);
+    }
+
+    // As above, identifying clients by the first address in clientHeader (X-Forwarded-For
+    // behind a proxy) when a request has it. Only for servers that every client reaches
+    // through that proxy: anyone else can pick a fresh identity per request.
+    public AdmissionControl(Map<String, String> rejectHeaders, String clientHeader) {
+        this.rejectHeaders = rejectHeaders;
+        this.clientHeader = clientHeader;
+    }
+
+    public HttpHandler wrap(String endpoint, Policy policy, HttpHandler handler) {
+        AdaptiveLimiter limiter = policy.maxConcurrent > 0
+                ? new AdaptiveLimiter(policy.maxConcurrent, TimeUnit.MILLISECONDS.toNanos(policy.targetDelayMs))
+                : null;
+        Map<String, TokenBucket> buckets = newBucketMap();
+        EndpointStats endpointStats = stats.computeIfAbsent(endpoint, k -> new EndpointStats());
+
+        return exchange -> {
+            // Preflight requests are cheap and must not use up a client's tokens
+            if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
+                handler.handle(exchange);
+                return;
+            }
+
+            if (policy.tokensPerSecond > 0) {
+                TokenBucket bucket = bucketFor(buckets, clientOf(exchange), policy);
+                long waitMs = bucket.tryTake();
+                if (waitMs > 0) {
+                    endpointStats.rateLimited.incrementAndGet();
+                    reject(exchange, 429, "rate_limited", Math.max(1, (waitMs + 999) / 1000));
+                    return;
+                }
+            }
+
+            if (limiter == null) {
+                endpointStats.admitted.incrementAndGet();
+                handler.handle(exchange);
+                return;
+            }
+
+            boolean admitted;
+            try {
+                admitted = limiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                admitted = false;
+            }
+            if (!admitted) {
+                endpointStats.shed.incrementAndGet();
+                reject(exchange, 503, "overloaded", 1);
+                return;
+            }
+            endpointStats.admitted.incrementAndGet();
+            try {
+                handler.handle(exchange);
+            } finally {
+                limiter.release();
+            }
+        };
+    }
+
+    public String getStatsJson() {
+        StringBuilder json = new StringBuilder("[");
+        List<String> endpoints = new ArrayList<>(stats.keySet());
+        Collections.sort(endpoints);
+        for (int i = 0; i < endpoints.size(); i++) {
+            EndpointStats s = stats.get(endpoints.get(i));
+            json.append(String.format("{\"endpoint\": \"%s\", \"admitted\": %d, \"rateLimited\": %d, \"shed\": %d}",
+                    endpoints.get(i), s.admitted.get(), s.rateLimited.get(), s.shed.get()));
+            if (i < endpoints.size() - 1)
+                json.append(",");
+        }
+        json.append("]");
+        return json.toString();
+    }
+
+    // Per-client buckets in least recently used order, capped at MAX_TRACKED_CLIENTS: a new
+    // client evicts the one idle longest, whose bucket has most likely refilled anyway, so
+    // a scan over many addresses costs a bounded map rather than growing it without end
+    private static Map<String, TokenBucket> newBucketMap() {
+        return Collections.synchronizedMap(new LinkedHashMap<String, TokenBucket>(256, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+                return size() > MAX_TRACKED_CLIENTS;
+            }
+        });
+    }
+
+    private static TokenBucket bucketFor(Map<String, TokenBucket> buckets, String client, Policy policy) {
+        return buckets.computeIfAbsent(client, k -> new TokenBucket(policy.tokensPerSecond, policy.burst));
+    }
+
+    private String clientOf(HttpExchange exchange) {
+        if (clientHeader != null) {
+            String forwarded = exchange.getRequestHeaders().getFirst(clientHeader);
+            if (forwarded != null) {
+                int comma = forwarded.indexOf(',');
+                String client = (comma < 0 ? forwarded : forwarded.substring(0, comma)).trim();
+                if (!client.isEmpty()) {
+                    return client;
+                }
+            }
+        }
+        if (exchange.getRemoteAddress() == null || exchange.getRemoteAddress().getAddress() == null) {
+            return "unknown";
+        }
+        return exchange.getRemoteAddress().getAddress().getHostAddress();
+    }
+
+    private void reject(HttpExchange exchange, int code, String error, long retryAfterSeconds) throws IOException {
+        rejectHeaders.forEach(exchange.getResponseHeaders()::set);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+        byte[] body = ("{\"error\": \"" + error + "\"}").getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private static class EndpointStats {
+        final AtomicLong admitted = new AtomicLong();
+        final AtomicLong rateLimited = new AtomicLong();
+        final AtomicLong shed = new AtomicLong();
+    }
+
+    // Refilled lazily on each take, so idle clients cost nothing
+    static class TokenBucket {
+        private final double tokensPerNano;
+        private final int burst;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        TokenBucket(double tokensPerSecond, int burst) {
+            this.tokensPerNano = tokensPerSecond / 1e9;
+            this.burst = Math.max(1, burst);
+            this.tokens = this.burst;
+        }
+
+        // 0 when a token was taken, otherwise milliseconds until one is available
+        synchronized long tryTake() {
+            refill(System.nanoTime());
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano / 1e6));
+        }
+
+        private void refill(long now) {
+            if (now > lastRefill) {
+                tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+                lastRefill = now;
+            }
+        }
+    }
+
+    // Concurrency limit that adapts to queueing delay. A request waits at most the target
+    // delay for a slot, and only as many requests as the limit may wait at once; the rest are
+    // refused straight away, so a burst cannot park every server thread here. Over each
+    // 100 ms interval the shortest wait is tracked: if even that
+    // exceeded the target, the queue is standing rather than a burst draining (as in CoDel),
+    // so the limit shrinks and new requests are refused at once until an interval recovers.
+    // Intervals without a standing queue grow the limit back by one, or straight to the
+    // maximum when nothing had to queue at all.
+    static class AdaptiveLimiter {
+        private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+        private final int maxLimit;
+        private final long targetDelayNanos;
+        private double limit;
+        private int inFlight;
+        private int waiting;
+        private long intervalStart = System.nanoTime();
+        private long intervalMinDelay = Long.MAX_VALUE;
+        private boolean sawQueue;
+        private boolean overloaded;
+
+        AdaptiveLimiter(int maxLimit, long targetDelayNanos) {
+            this.maxLimit = maxLimit;
+            this.targetDelayNanos = targetDelayNanos;
+            this.limit = maxLimit;
+        }
+
+        synchronized boolean acquire() throws InterruptedException {
+            long start = System.nanoTime();
+            rollInterval(start);
+
+            if (inFlight < (int) limit) {
+                inFlight++;
+                intervalMinDelay = 0;
+                return true;
+            }
+            sawQueue = true;
+            if (overloaded || waiting >= (int) limit) {
+                return false;
+            }
+
+            long deadline = start + targetDelayNanos;
+            waiting++;
+            try {
+                while (inFlight >= (int) limit) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        intervalMinDelay = Math.min(intervalMinDelay, System.nanoTime() - start);
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            } finally {
+                waiting--;
+            }
+            inFlight++;
+            intervalMinDelay = Math.min(intervalMinDelay, System.nanoTime() - start);
+            return true;
+        }
+
+        synchronized void release() {
+            inFlight--;
+            notifyAll();
+        }
+
+        private void rollInterval(long now) {
+            if (now - intervalStart < INTERVAL_NANOS) {
+                return;
+            }
+            overloaded = intervalMinDelay != Long.MAX_VALUE && intervalMinDelay >= targetDelayNanos;
+            if (overloaded) {
+                limit = Math.max(1, limit * 0.9);
+            } else if (sawQueue) {
+                limit = Math.min(maxLimit, limit + 1);
+            } else {
+                limit = maxLimit;
+            }
+            intervalStart = now;
+            intervalMinDelay = Long.MAX_VALUE;
+            sawQueue = false;
+        }
+    }
+}
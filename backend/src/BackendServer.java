@@ -6,69 +6,374 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.File;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class BackendServer {
 
     private static final int PORT = 8080;
-    private static SearchEngine searchEngine;
-    private static SpellChecker spellChecker;
-    private static WordCompletion wordCompletion;
+
+    // Headers on every response, applied with set() so a header is never sent twice
+    private static final Map<String, String> CORS_HEADERS = new LinkedHashMap<>();
+    static {
+        CORS_HEADERS.put("Access-Control-Allow-Origin", "*");
+        CORS_HEADERS.put("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        CORS_HEADERS.put("Access-Control-Allow-Headers", "Content-Type");
+    }
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+
+    // Provider CSVs, relative to the backend directory
+    private static final String[] PROVIDER_CSV_FILES = {
+            "../bell_plans.csv",
+            "../rogers_plans.csv",
+            "../virgin_plans.csv",
+            "../att_internet_plans_final.csv",
+            "../koodo_plans.csv",
+            "../fido_plans.csv",
+            "../freedom_plans.csv"
+    };
+    // Plus any listed in -Dplans.extraCsv (comma-separated), such as PlanSnapshotExtractor's
+    // snapshot_plans.csv. Those are opt-in because a snapshot holds plans of providers that
+    // already have a CSV above, which would otherwise be indexed and served twice.
+    private static final String[] CSV_FILES = csvFiles(System.getProperty("plans.extraCsv"));
+    private static final File SCHEMA_FILE = new File("csv_schemas.properties");
+    private static final File COVERAGE_FILE = new File("coverage.csv");
+
+    // Everything built from the data files. A generation is never changed once published,
+    // except that crawled pages are indexed into the current one; a reload builds the next
+    // generation on the side and publishes it with one reference swap, so every request
+    // works against a single, fully built generation.
+    static class DataGeneration {
+        final long number;
+        final SearchEngine searchEngine;
+        final SpellChecker spellChecker;
+        final WordCompletion wordCompletion;
+        // /api/plans body, serialised once per generation
+        final SnapshotPayload plansSnapshot;
+        // Places, coordinates and provider coverage for /api/coverage
+        final CoverageIndex coverage;
+        final String coverageStamp;
+        // Spell checker and completion words of each data file, by path, for the next reload
+        final Map<String, FileWords> words;
+        final long builtAt = System.currentTimeMillis();
+        final long buildMs;
+
+        DataGeneration(long number, SearchEngine searchEngine, SpellChecker spellChecker,
+                WordCompletion wordCompletion, SnapshotPayload plansSnapshot, CoverageIndex coverage,
+                String coverageStamp, Map<String, FileWords> words, long buildMs) {
+            this.number = number;
+            this.searchEngine = searchEngine;
+            this.spellChecker = spellChecker;
+            this.wordCompletion = wordCompletion;
+            this.plansSnapshot = plansSnapshot;
+            this.coverage = coverage;
+            this.coverageStamp = coverageStamp;
+            this.words = words;
+            this.buildMs = buildMs;
+        }
+    }
+
+    static class FileWords {
+        final String stamp;
+        final Set<String> words;
+
+        FileWords(String stamp, Set<String> words) {
+            this.stamp = stamp;
+            this.words = words;
+        }
+    }
+
+    private static final AtomicReference<DataGeneration> data = new AtomicReference<>();
+    private static DataReloader reloader;
     private static WebCrawlerService webCrawler;
 
+    // Crawled pages kept so a reload can index them into the next generation; guarded by
+    // itself, which also orders crawl indexing against the swap. The oldest are dropped
+    // past the cap and do not survive the next reload.
+    private static final Deque<String[]> crawledPages = new ArrayDeque<>();
+    private static final int MAX_REPLAYED_PAGES = 1000;
+
+    // Crawl progress and index stats pushed to /api/events
+    private static EventStream events;
+
+    // Crawls run one at a time off the request thread; progress goes out on /api/events
+    private static final ExecutorService crawlExecutor = Executors.newSingleThreadExecutor();
+    private static final AtomicBoolean crawlRunning = new AtomicBoolean();
+
+    // Per-endpoint limits, off with -Dadmission=off. Behind a proxy, -Dadmission.clientHeader=
+    // X-Forwarded-For tells clients apart by that header instead of the proxy's address.
+    private static AdmissionControl admission;
+
     public static void main(String[] args) throws IOException {
         // Initialize services
-        searchEngine = new SearchEngine();
-        spellChecker = new SpellChecker();
-        wordCompletion = new WordCompletion();
         webCrawler = new WebCrawlerService();
 
         // Load initial data
-        loadData();
+        data.set(loadData(new SearchEngine(), ForkJoinPool.commonPool(), 1, null));
+        openSearchHistory(data.get().searchEngine);
+        startReloader();
 
-        // Start Server
-        HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
+        // The JDK transport spends a writer thread per subscriber (see StreamSubscriber), so it
+        // takes far fewer than the NIO transport, which writes to all of them from the flusher
+        boolean nio = "nio".equalsIgnoreCase(System.getProperty("server.transport"));
+        events = new EventStream(() -> data.get().searchEngine,
+                Integer.getInteger("events.maxSubscribers", nio ? 1000 : 64));
+        webCrawler.setListener(new IndexingCrawlListener());
+        events.start();
 
-        // Define endpoints
-        server.createContext("/api/search", new SearchHandler());
-        server.createContext("/api/suggest", new SuggestHandler());
-        server.createContext("/api/spellcheck", new SpellCheckHandler());
-        server.createContext("/api/crawl", new CrawlHandler());
-        server.createContext("/api/frequency", new FrequencyHandler());
-        server.createContext("/api/history", new HistoryHandler());
-        server.createContext("/api/plans", new PlansHandler());
+        // Define endpoints. Policy: max concurrent, tokens/s and burst per client, target queue delay (ms)
+        admission = new AdmissionControl(CORS_HEADERS, System.getProperty("admission.clientHeader"));
+        int cores = Runtime.getRuntime().availableProcessors();
+        Map<String, HttpHandler> contexts = new LinkedHashMap<>();
+        contexts.put("/api/search", limit("/api/search", new AdmissionControl.Policy(cores * 2, 20, 40, 50),
+                new SearchHandler()));
+        contexts.put("/api/suggest", limit("/api/suggest", new AdmissionControl.Policy(0, 50, 100, 0),
+                new SuggestHandler()));
+        contexts.put("/api/spellcheck", limit("/api/spellcheck", new AdmissionControl.Policy(cores, 5, 10, 20),
+                new SpellCheckHandler()));
+        contexts.put("/api/crawl", limit("/api/crawl", new AdmissionControl.Policy(1, 2.0 / 60, 2, 0),
+                new CrawlHandler()));
+        contexts.put("/api/frequency", limit("/api/frequency", new AdmissionControl.Policy(cores, 20, 40, 50),
+                new FrequencyHandler()));
+        contexts.put("/api/history", new HistoryHandler());
+        contexts.put("/api/trending", limit("/api/trending", new AdmissionControl.Policy(cores, 20, 40, 50),
+                new TrendingHandler()));
+        contexts.put("/api/plans", new PlansHandler());
+        contexts.put("/api/admission", new AdmissionStatsHandler());
+        contexts.put("/api/events", new EventsHandler());
+        contexts.put("/api/coverage", new CoverageHandler());
+        contexts.put("/api/extract", limit("/api/extract", new AdmissionControl.Policy(2, 1, 4, 0),
+                new ExtractHandler()));
+        contexts.put("/api/reload", limit("/api/reload", new AdmissionControl.Policy(2, 1, 5, 0),
+                new ReloadHandler()));
 
         // CORS for all endpoints
-        server.createContext("/", new CorsHandler());
+        contexts.put("/", new CorsHandler());
+
+        // Start Server: -Dserver.transport=nio selects the selector-based transport
+        if (nio) {
+            startNioServer(contexts);
+        } else {
+            startJdkServer(contexts);
+        }
+    }
+
+    private static HttpHandler limit(String endpoint, AdmissionControl.Policy policy, HttpHandler handler) {
+        if ("off".equalsIgnoreCase(System.getProperty("admission"))) {
+            return handler;
+        }
+        return admission.wrap(endpoint, policy, handler);
+    }
 
-        server.setExecutor(null); // creates a default executor
+    private static void startJdkServer(Map<String, HttpHandler> contexts) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
+        contexts.forEach(server::createContext);
+        // A pool rather than the single default thread, so a slow endpoint holds only its own
+        // share of threads; the expensive endpoints' concurrency limits stay well below its size
+        server.setExecutor(Executors.newFixedThreadPool(workerThreads()));
         server.start();
         System.out.println("Server started on port " + PORT);
     }
 
-    private static void loadData() {
+    private static void startNioServer(Map<String, HttpHandler> contexts) throws IOException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int eventLoops = Math.max(1, Math.min(4, cores / 2));
+        NioHttpServer server = new NioHttpServer(new InetSocketAddress(PORT), eventLoops,
+                Executors.newFixedThreadPool(workerThreads()));
+        contexts.forEach(server::createContext);
+        server.registerSnapshot("/api/plans", () -> data.get().plansSnapshot);
+        server.registerEventStream("/api/events", events, CORS_HEADERS);
+        server.start();
+        System.out.println("Server started on port " + PORT + " (NIO, " + eventLoops + " event loops)");
+    }
+
+    private static int workerThreads() {
+        return Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    // Search history survives restarts through an append-only log. Configured with
+    // -Dhistory.dir, -Dhistory.fsync (EVERY_BATCH, INTERVAL, NEVER),
+    // -Dhistory.fsyncIntervalMs, -Dhistory.compactAfter (records) and -Dhistory.compactIntervalMs
+    private static void openSearchHistory(SearchEngine searchEngine) {
+        SearchHistoryLog historyLog = new SearchHistoryLog(
+                new File(System.getProperty("history.dir", "history")),
+                SearchHistoryLog.FsyncPolicy.valueOf(System.getProperty("history.fsync", "INTERVAL").toUpperCase()),
+                Long.getLong("history.fsyncIntervalMs", 200),
+                Long.getLong("history.compactAfter", 100000),
+                Long.getLong("history.compactIntervalMs", 3_600_000));
+        try {
+            searchEngine.attachHistoryLog(historyLog);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    historyLog.close();
+                } catch (IOException e) {
+                    System.out.println("Error closing search history: " + e.getMessage());
+                }
+            }));
+        } catch (IOException e) {
+            System.out.println("Warning: Search history will not be saved: " + e.getMessage());
+        }
+    }
+
+    // Builds a generation from the data files. Whatever the previous generation, if any, built
+    // from a file that has not changed since (same size and modification time) is reused rather
+    // than read again, so a reload costs about as much as the files that changed. A data file
+    // that cannot be read properly keeps its previous plans and words (see
+    // SearchEngine.indexFiles), and the previous coverage index stays when coverage.csv cannot
+    // be read. A deleted data file drops out.
+    private static DataGeneration loadData(SearchEngine searchEngine, ForkJoinPool ingestPool, long number,
+            DataGeneration previous) {
         System.out.println("Loading data...");
-        // Load CSVs and initialize engines
-        String[] csvFiles = {
-                "../bell_plans.csv",
-                "../rogers_plans.csv",
-                "../virgin_plans.csv",
-                "../att_internet_plans_final.csv",
-                "../koodo_plans.csv",
-                "../fido_plans.csv",
-                "../freedom_plans.csv"
-        };
-
-        for (String file : csvFiles) {
+        long start = System.nanoTime();
+        Map<String, FileWords> previousWords = previous == null ? Collections.emptyMap() : previous.words;
+
+        searchEngine.loadSchemas(SCHEMA_FILE);
+
+        List<File> found = new ArrayList<>();
+        for (String file : CSV_FILES) {
             File f = new File(file);
             if (f.exists()) {
-                searchEngine.indexFile(f);
-                spellChecker.buildVocabulary(f);
-                wordCompletion.buildTrie(f);
+                found.add(f);
             } else {
                 System.out.println("Warning: File not found: " + file);
             }
         }
+        // Search shards are built in parallel across the files
+        searchEngine.indexFiles(found, ingestPool);
+        // Built here rather than by the first fuzzy query after the swap
+        searchEngine.getTermCount();
+        SnapshotPayload plansSnapshot = previous != null && searchEngine.hasSamePlansAsPrevious()
+                ? previous.plansSnapshot
+                : buildJsonSnapshot(searchEngine.getAllPlans());
+
+        SpellChecker spellChecker = new SpellChecker();
+        WordCompletion wordCompletion = new WordCompletion();
+        Map<String, FileWords> words = new HashMap<>();
+        for (File f : found) {
+            String path = f.getAbsolutePath();
+            FileWords fileWords = previousWords.get(path);
+            String stamp = stamp(f);
+            boolean unchanged = fileWords != null
+                    && (fileWords.stamp.equals(stamp) || searchEngine.getKeptFiles().containsKey(f.getName()));
+            if (!unchanged) {
+                try {
+                    fileWords = new FileWords(stamp, SpellChecker.vocabularyOf(f));
+                } catch (IOException e) {
+                    System.out.println("Error reading file for vocabulary: " + f.getName());
+                    continue;
+                }
+            }
+            words.put(path, fileWords);
+            spellChecker.addVocabulary(fileWords.words);
+            wordCompletion.addWords(fileWords.words);
+        }
+
+        CoverageIndex coverage = previous == null ? null : previous.coverage;
+        String coverageStamp = previous == null ? null : previous.coverageStamp;
+        if (!COVERAGE_FILE.exists()) {
+            System.out.println("Warning: File not found: " + COVERAGE_FILE);
+        } else if (coverage == null || !stamp(COVERAGE_FILE).equals(coverageStamp)) {
+            try {
+                String stamp = stamp(COVERAGE_FILE);
+                coverage = CoverageIndex.load(COVERAGE_FILE);
+                coverageStamp = stamp;
+                System.out.println("Loaded coverage for " + coverage.size() + " places");
+            } catch (IOException e) {
+                System.out.println("Error loading coverage: " + e.getMessage());
+            }
+        }
         System.out.println("Data loaded.");
+        return new DataGeneration(number, searchEngine, spellChecker, wordCompletion, plansSnapshot, coverage,
+                coverageStamp, words, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Size and modification time, which tell whether a file changed since it was last read
+    private static String stamp(File file) {
+        return file.length() + "@" + file.lastModified();
+    }
+
+    // Reloads on changes to the data files (off with -Dreload.watch=off) and on POST /api/reload.
+    // Rebuilds index on a pool of half the cores, so queries keep the rest.
+    private static void startReloader() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool reloadPool = new ForkJoinPool(Math.max(1, cores / 2), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }, null, false);
+
+        List<File> watched = new ArrayList<>();
+        for (String file : CSV_FILES) {
+            watched.add(new File(file));
+        }
+        watched.add(SCHEMA_FILE);
+        watched.add(COVERAGE_FILE);
+        reloader = new DataReloader(watched, () -> reload(reloadPool), Long.getLong("reload.debounceMs", 500));
+        if (!"off".equalsIgnoreCase(System.getProperty("reload.watch"))) {
+            try {
+                reloader.startWatching();
+            } catch (IOException e) {
+                System.out.println("Warning: Data files will not be watched: " + e.getMessage());
+            }
+        }
+    }
+
+    // Runs on the reloader's thread: builds the next generation while the current one serves,
+    // then swaps it in
+    private static String reload(ForkJoinPool reloadPool) {
+        DataGeneration current = data.get();
+        DataGeneration next = loadData(current.searchEngine.nextGeneration(), reloadPool, current.number + 1,
+                current);
+        int plans = next.searchEngine.getPlanStore().size();
+        StringBuilder changes = new StringBuilder();
+        // Files that could not be read (a broken csv_schemas.properties, a file caught
+        // mid-write) were served from the current generation instead
+        for (Map.Entry<String, String> kept : new TreeMap<>(next.searchEngine.getKeptFiles()).entrySet()) {
+            changes.append("; ").append(kept.getKey()).append(' ').append(kept.getValue())
+                    .append(", kept its previous plans");
+        }
+        // Deleted or emptied files take their plans with them, as on a restart
+        Map<String, SearchEngine.LoadReport> reports = next.searchEngine.getLoadReports();
+        for (Map.Entry<String, SearchEngine.LoadReport> before : new TreeMap<>(
+                current.searchEngine.getLoadReports()).entrySet()) {
+            SearchEngine.LoadReport after = reports.get(before.getKey());
+            if (before.getValue().plans > 0 && (after == null || after.plans == 0)) {
+                changes.append("; ").append(before.getKey()).append(after == null ? " deleted" : " has no plans")
+                        .append(", dropped its ").append(before.getValue().plans).append(" plans");
+            }
+        }
+
+        int replayed;
+        synchronized (crawledPages) {
+            for (String[] page : crawledPages) {
+                next.searchEngine.indexDocument(page[0], page[1]);
+            }
+            replayed = crawledPages.size();
+            data.set(next);
+        }
+        return String.format("generation %d, %d plans, %d crawled pages re-indexed, built in %d ms%s",
+                next.number, plans, replayed, next.buildMs, changes);
     }
 
     // --- Handlers ---
@@ -93,7 +398,9 @@ public class BackendServer {
             if ("GET".equals(exchange.getRequestMethod())) {
                 String query = getQueryParam(exchange, "query");
                 if (query != null) {
-                    String results = searchEngine.search(query);
+                    // No limit returns every match, as before sharding
+                    int limit = intParam(exchange, "limit", Integer.MAX_VALUE);
+                    String results = data.get().searchEngine.search(query, Math.max(limit, 0));
                     sendResponse(exchange, results);
                 } else {
                     sendResponse(exchange, "[]");
@@ -109,7 +416,7 @@ public class BackendServer {
             if ("GET".equals(exchange.getRequestMethod())) {
                 String prefix = getQueryParam(exchange, "prefix");
                 if (prefix != null) {
-                    String suggestions = wordCompletion.getSuggestions(prefix);
+                    String suggestions = data.get().wordCompletion.getSuggestions(prefix);
                     sendResponse(exchange, suggestions);
                 } else {
                     sendResponse(exchange, "[]");
@@ -125,7 +432,7 @@ public class BackendServer {
             if ("GET".equals(exchange.getRequestMethod())) {
                 String word = getQueryParam(exchange, "word");
                 if (word != null) {
-                    String correction = spellChecker.check(word);
+                    String correction = data.get().spellChecker.check(word);
                     sendResponse(exchange, "{\"correction\": \"" + correction + "\"}");
                 } else {
                     sendResponse(exchange, "{}");
@@ -141,9 +448,17 @@ public class BackendServer {
             if ("POST".equals(exchange.getRequestMethod())) {
                 String url = getQueryParam(exchange, "url");
                 if (url != null) {
-                    webCrawler.crawl(url);
-                    // Re-index after crawl
-                    // For simplicity, we might just add to index dynamically or reload
+                    if (!crawlRunning.compareAndSet(false, true)) {
+                        sendResponse(exchange, "{\"error\": \"crawl_in_progress\"}");
+                        return;
+                    }
+                    crawlExecutor.execute(() -> {
+                        try {
+                            webCrawler.crawl(url);
+                        } finally {
+                            crawlRunning.set(false);
+                        }
+                    });
                     sendResponse(exchange, "{\"status\": \"crawling_started\", \"url\": \"" + url + "\"}");
                 } else {
                     sendResponse(exchange, "{\"error\": \"missing_url\"}");
@@ -157,7 +472,7 @@ public class BackendServer {
         public void handle(HttpExchange exchange) throws IOException {
             addCorsHeaders(exchange);
             if ("GET".equals(exchange.getRequestMethod())) {
-                String stats = searchEngine.getFrequencyStats();
+                String stats = data.get().searchEngine.getFrequencyStats();
                 sendResponse(exchange, stats);
             }
         }
@@ -168,19 +483,323 @@ public class BackendServer {
         public void handle(HttpExchange exchange) throws IOException {
             addCorsHeaders(exchange);
             if ("GET".equals(exchange.getRequestMethod())) {
-                String history = searchEngine.getSearchHistory();
+                String history = data.get().searchEngine.getSearchHistory();
                 sendResponse(exchange, history);
             }
         }
     }
 
+    static class TrendingHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            addCorsHeaders(exchange);
+            if ("GET".equals(exchange.getRequestMethod())) {
+                String windowParam = getQueryParam(exchange, "window");
+                TrendingQueries.Window window = TrendingQueries.Window
+                        .fromLabel(windowParam != null ? windowParam : "5m");
+                if (window == null) {
+                    sendResponse(exchange, "{\"error\": \"invalid_window\", \"allowed\": [\"5m\", \"1h\", \"24h\"]}");
+                    return;
+                }
+                int limit = 10;
+                String limitParam = getQueryParam(exchange, "limit");
+                if (limitParam != null) {
+                    try {
+                        limit = Math.max(1, Math.min(100, Integer.parseInt(limitParam)));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+                sendResponse(exchange, data.get().searchEngine.getTrending(window, limit));
+            }
+        }
+    }
+
+    static class AdmissionStatsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            addCorsHeaders(exchange);
+            if ("GET".equals(exchange.getRequestMethod())) {
+                sendResponse(exchange, admission.getStatsJson());
+            }
+        }
+    }
+
+    // /api/coverage/suggest?prefix=tor&limit=8        places by name prefix, most populous first
+    // /api/coverage/nearest?lat=..&lon=..&k=1           closest places with their providers
+    // /api/coverage/providers?lat=..&lon=..&radiusKm=25&network=5g
+    //                                                    providers with coverage within the radius
+    static class CoverageHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            addCorsHeaders(exchange);
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                return;
+            }
+            CoverageIndex index = data.get().coverage;
+            if (index == null) {
+                sendResponse(exchange, "{\"error\": \"coverage_unavailable\"}");
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            try {
+                if (path.endsWith("/suggest")) {
+                    String prefix = getQueryParam(exchange, "prefix");
+                    int limit = Math.max(1, Math.min(50, intParam(exchange, "limit", 8)));
+                    List<CoverageIndex.Location> places = prefix == null ? new ArrayList<>()
+                            : index.suggest(prefix, limit);
+                    StringBuilder json = new StringBuilder("[");
+                    for (int i = 0; i < places.size(); i++) {
+                        if (i > 0)
+                            json.append(",");
+                        json.append(placeJson(places.get(i), -1));
+                    }
+                    sendResponse(exchange, json.append("]").toString());
+                } else if (path.endsWith("/nearest")) {
+                    int k = Math.max(1, Math.min(50, intParam(exchange, "k", 1)));
+                    List<CoverageIndex.Nearby> nearby = index.nearest(doubleParam(exchange, "lat"),
+                            doubleParam(exchange, "lon"), k);
+                    StringBuilder json = new StringBuilder("[");
+                    for (int i = 0; i < nearby.size(); i++) {
+                        if (i > 0)
+                            json.append(",");
+                        json.append(placeJson(nearby.get(i).location, nearby.get(i).distanceKm));
+                    }
+                    sendResponse(exchange, json.append("]").toString());
+                } else if (path.endsWith("/providers")) {
+                    String radiusParam = getQueryParam(exchange, "radiusKm");
+                    double radiusKm = radiusParam == null ? 25
+                            : Math.min(2000, finite(Double.parseDouble(radiusParam)));
+                    int wanted = CoverageIndex.technologyMask(getQueryParam(exchange, "network"));
+                    Map<String, Integer> providers = index.providersNear(doubleParam(exchange, "lat"),
+                            doubleParam(exchange, "lon"), radiusKm);
+                    StringBuilder json = new StringBuilder("{\"radiusKm\": " + radiusKm + ", \"providers\": [");
+                    boolean first = true;
+                    for (Map.Entry<String, Integer> provider : providers.entrySet()) {
+                        if ((provider.getValue() & wanted) == 0) {
+                            continue;
+                        }
+                        if (!first)
+                            json.append(",");
+                        first = false;
+                        json.append(providerJson(provider.getKey(), provider.getValue() & wanted));
+                    }
+                    sendResponse(exchange, json.append("]}").toString());
+                } else {
+                    sendResponse(exchange, "{\"error\": \"unknown_coverage_query\"}");
+                }
+            } catch (IllegalArgumentException | NullPointerException e) {
+                // Unparseable or non-finite numbers, and coordinates or radii out of range
+                sendResponse(exchange, "{\"error\": \"invalid_coordinates\"}");
+            }
+        }
+
+        private static String placeJson(CoverageIndex.Location place, double distanceKm) {
+            StringBuilder json = new StringBuilder(String.format(Locale.ROOT,
+                    "{\"name\": \"%s\", \"province\": \"%s\", \"label\": \"%s\", \"lat\": %.4f, \"lon\": %.4f, \"population\": %d",
+                    escapeJson(place.name), escapeJson(place.province), escapeJson(place.label()), place.latitude,
+                    place.longitude, place.population));
+            if (distanceKm >= 0) {
+                json.append(String.format(Locale.ROOT, ", \"distanceKm\": %.2f", distanceKm));
+            }
+            json.append(", \"providers\": [");
+            for (int p = 0; p < place.providers.length; p++) {
+                if (p > 0)
+                    json.append(",");
+                json.append(providerJson(place.providers[p], place.technologies[p]));
+            }
+            return json.append("]}").toString();
+        }
+
+        private static String providerJson(String provider, int technologies) {
+            StringBuilder json = new StringBuilder("{\"provider\": \"" + escapeJson(provider) + "\", \"technologies\": [");
+            List<String> names = CoverageIndex.technologyNames(technologies);
+            for (int t = 0; t < names.size(); t++) {
+                if (t > 0)
+                    json.append(",");
+                json.append("\"").append(names.get(t)).append("\"");
+            }
+            return json.append("]}").toString();
+        }
+    }
+
+    // POST the file as the raw request body: /api/extract?domain=gmail. Results stream back as
+    // newline-delimited JSON while the upload is still being read (see TextExtraction).
+    static class ExtractHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            addCorsHeaders(exchange);
+            if ("OPTIONS".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(204, -1);
+                exchange.close();
+                return;
+            }
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                return;
+            }
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            TextExtraction extraction = new TextExtraction(pool, pool.getParallelism(),
+                    getQueryParam(exchange, "domain"));
+            exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=UTF-8");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream os = exchange.getResponseBody()) {
+                extraction.run(exchange.getRequestBody(), os);
+            } catch (IOException e) {
+                System.out.println("Extraction stopped: " + e.getMessage());
+            }
+        }
+    }
+
+    // Serves /api/events on the JDK transport (the NIO transport streams it itself). The
+    // handler returns once subscribed; the flusher thread writes to the open response.
+    static class EventsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            addCorsHeaders(exchange);
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                return;
+            }
+            if (events.isFull()) {
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=UTF-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+            StreamSubscriber subscriber = new StreamSubscriber(exchange);
+            if (events.subscribe(subscriber)) {
+                subscriber.start();
+            } else {
+                subscriber.close();
+            }
+        }
+    }
+
+    // An event stream on the JDK transport, where writes block. Frames go into a bounded queue
+    // that the subscriber's own writer thread drains, so a client that stops reading only
+    // stalls that thread; once MAX_BACKLOG frames are waiting it is dropped, as the NIO
+    // transport does, and gets the full state again in the hello when it reconnects. A thread
+    // each is why events.maxSubscribers defaults to 64 on this transport.
+    static class StreamSubscriber implements EventStream.Subscriber {
+        private static final int MAX_BACKLOG = 256;
+
+        private final HttpExchange exchange;
+        private final BlockingQueue<byte[]> frames = new ArrayBlockingQueue<>(MAX_BACKLOG);
+        private final Thread writer;
+        private volatile boolean closed;
+
+        StreamSubscriber(HttpExchange exchange) {
+            this.exchange = exchange;
+            this.writer = new Thread(this::writeLoop, "event-stream-writer");
+            writer.setDaemon(true);
+        }
+
+        void start() {
+            writer.start();
+        }
+
+        @Override
+        public boolean send(byte[] frame) {
+            if (closed) {
+                return false;
+            }
+            if (!frames.offer(frame)) {
+                close();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            writer.interrupt();
+            exchange.close();
+        }
+
+        private void writeLoop() {
+            OutputStream os = exchange.getResponseBody();
+            try {
+                while (!closed) {
+                    byte[] frame = frames.take();
+                    os.write(frame);
+                    // Frames queued meanwhile go out in the same flush
+                    for (byte[] next = frames.poll(); next != null; next = frames.poll()) {
+                        os.write(next);
+                    }
+                    os.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // Client went away, or dropped by close()
+            } finally {
+                closed = true;
+                events.unsubscribe(this);
+                exchange.close();
+            }
+        }
+    }
+
+    // GET: the serving generation and the reloader's state. POST: rebuild from the data files
+    // in the background; the response does not wait for it.
+    static class ReloadHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            addCorsHeaders(exchange);
+            DataGeneration current = data.get();
+            if ("POST".equals(exchange.getRequestMethod())) {
+                boolean scheduled = reloader.request("/api/reload");
+                sendResponse(exchange, String.format("{\"status\": \"%s\", \"generation\": %d}",
+                        scheduled ? "reload_scheduled" : "reload_already_pending", current.number));
+            } else if ("GET".equals(exchange.getRequestMethod())) {
+                sendResponse(exchange, String.format(
+                        "{\"generation\": %d, \"plans\": %d, \"builtAt\": %d, \"buildMs\": %d, \"reloader\": %s}",
+                        current.number, current.searchEngine.getPlanStore().size(), current.builtAt, current.buildMs,
+                        reloader.getStatusJson()));
+            }
+        }
+    }
+
+    // Indexes each crawled page so it becomes searchable, and reports progress and the
+    // terms it added to the event stream
+    static class IndexingCrawlListener implements WebCrawlerService.CrawlListener {
+        @Override
+        public void crawlStarted(String startUrl) {
+            events.crawlStarted(startUrl);
+        }
+
+        @Override
+        public void pageFetched(String url, long bytes, String text) {
+            Collection<String> newTerms = new ArrayList<>();
+            synchronized (crawledPages) {
+                crawledPages.add(new String[] { url, text });
+                if (crawledPages.size() > MAX_REPLAYED_PAGES) {
+                    crawledPages.removeFirst();
+                }
+                data.get().searchEngine.indexDocument(url, text, newTerms);
+            }
+            events.pageFetched(url, bytes, text);
+            events.termsIndexed(newTerms);
+        }
+
+        @Override
+        public void pageFailed(String url, String error) {
+            events.pageFailed(url, error);
+        }
+
+        @Override
+        public void crawlFinished(String startUrl, int pages) {
+            events.crawlFinished(startUrl, pages);
+        }
+    }
+
     static class PlansHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             addCorsHeaders(exchange);
             if ("GET".equals(exchange.getRequestMethod())) {
-                String plans = searchEngine.getAllPlans();
-                sendResponse(exchange, plans);
+                sendSnapshot(exchange, data.get().plansSnapshot);
             }
         }
     }
@@ -188,9 +807,54 @@ public class BackendServer {
     // --- Helpers ---
 
     private static void addCorsHeaders(HttpExchange exchange) {
-        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
-        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type");
+        CORS_HEADERS.forEach(exchange.getResponseHeaders()::set);
+    }
+
+    private static int intParam(HttpExchange exchange, String param, int defaultValue) {
+        String value = getQueryParam(exchange, param);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static String[] csvFiles(String extra) {
+        List<String> files = new ArrayList<>(Arrays.asList(PROVIDER_CSV_FILES));
+        if (extra != null) {
+            for (String file : extra.split(",")) {
+                if (!file.trim().isEmpty()) {
+                    files.add(file.trim());
+                }
+            }
+        }
+        return files.toArray(new String[0]);
+    }
+
+    // Throws NumberFormatException or NullPointerException when missing or not a finite number
+    private static double doubleParam(HttpExchange exchange, String param) {
+        return finite(Double.parseDouble(getQueryParam(exchange, param)));
+    }
+
+    // parseDouble accepts "NaN" and "Infinity", which no coordinate or distance can be
+    private static double finite(double value) {
+        if (!Double.isFinite(value)) {
+            throw new NumberFormatException("Not a finite number: " + value);
+        }
+        return value;
+    }
+
+    private static String escapeJson(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static SnapshotPayload buildJsonSnapshot(String json) {
+        Map<String, String> headers = new LinkedHashMap<>(CORS_HEADERS);
+        headers.put("Content-Type", JSON_CONTENT_TYPE);
+        return new SnapshotPayload(headers, json);
     }
 
     private static String getQueryParam(HttpExchange exchange, String param) {
@@ -208,10 +872,23 @@ public class BackendServer {
 
     private static void sendResponse(HttpExchange exchange, String response) throws IOException {
         byte[] bytes = response.getBytes("UTF-8");
-        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
         exchange.sendResponseHeaders(200, bytes.length);
-        OutputStream os = exchange.getResponseBody();
-        os.write(bytes);
-        os.close();
+        // Closing ends this exchange only; the NIO transport keeps the connection alive
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    // The NIO transport answers snapshot routes itself; this path serves the JDK transport
+    private static void sendSnapshot(HttpExchange exchange, SnapshotPayload snapshot) throws IOException {
+        snapshot.getHeaders().forEach(exchange.getResponseHeaders()::set);
+        ByteBuffer body = snapshot.body();
+        byte[] bytes = new byte[body.remaining()];
+        body.get(bytes);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
     }
 }
@@ -0,0 +1,160 @@
+import java.util.*;
+
+// Builds a CoverageIndex over synthetic places spread across southern Canada and compares its
+// query latency with a linear scan, checking that both give the same answers.
+// Usage: java CoverageBenchmark [locations] [queries] [radiusKm]
+public class CoverageBenchmark {
+
+    private static final String[] PROVIDERS = { "Bell", "Rogers", "Telus", "Virgin Plus", "Koodo", "Fido",
+            "Freedom Mobile", "Videotron", "SaskTel", "Eastlink" };
+    private static final String[] PROVINCES = { "ON", "QC", "BC", "AB", "MB", "SK", "NS", "NB", "NL", "PE" };
+    private static final String[] SYLLABLES = { "ka", "to", "ron", "ville", "mont", "st", "la", "ber", "wood", "bay",
+            "lake", "ham", "fort", "port", "ri", "ver", "sas", "win", "dor", "new", "al", "ton", "que", "bec" };
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        double radiusKm = args.length > 2 ? Double.parseDouble(args[2]) : 25;
+
+        Random random = new Random(11);
+        List<CoverageIndex.Location> locations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            locations.add(syntheticLocation(random, i));
+        }
+
+        long start = System.nanoTime();
+        CoverageIndex index = new CoverageIndex(locations);
+        long buildMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("Locations: %d, build %d ms, radius %.0f km%n", count, buildMs, radiusKm);
+
+        double[][] points = new double[queries][];
+        String[] prefixes = new String[queries];
+        for (int i = 0; i < queries; i++) {
+            points[i] = new double[] { 42 + random.nextDouble() * 13, -128 + random.nextDouble() * 75 };
+            prefixes[i] = SYLLABLES[random.nextInt(SYLLABLES.length)].substring(0, 1 + random.nextInt(2));
+        }
+
+        // Warm up both paths before timing
+        for (int i = 0; i < Math.min(queries, 500); i++) {
+            index.nearest(points[i][0], points[i][1], 1);
+            index.providersNear(points[i][0], points[i][1], radiusKm);
+            scanNearest(locations, points[i][0], points[i][1]);
+        }
+
+        int mismatches = 0;
+        long[] indexNearest = new long[queries];
+        long[] scanNearest = new long[queries];
+        long[] indexProviders = new long[queries];
+        long[] scanProviders = new long[queries];
+        long[] suggest = new long[queries];
+        for (int i = 0; i < queries; i++) {
+            double lat = points[i][0];
+            double lon = points[i][1];
+
+            long t = System.nanoTime();
+            CoverageIndex.Nearby nearest = index.nearest(lat, lon, 1).get(0);
+            indexNearest[i] = System.nanoTime() - t;
+            t = System.nanoTime();
+            CoverageIndex.Location expected = scanNearest(locations, lat, lon);
+            scanNearest[i] = System.nanoTime() - t;
+            if (nearest.location != expected
+                    && Math.abs(nearest.distanceKm - haversineKm(lat, lon, expected.latitude, expected.longitude)) > 1e-6) {
+                mismatches++;
+            }
+
+            t = System.nanoTime();
+            Map<String, Integer> providers = index.providersNear(lat, lon, radiusKm);
+            indexProviders[i] = System.nanoTime() - t;
+            t = System.nanoTime();
+            Map<String, Integer> expectedProviders = scanProviders(locations, lat, lon, radiusKm);
+            scanProviders[i] = System.nanoTime() - t;
+            if (!providers.equals(expectedProviders)) {
+                mismatches++;
+            }
+
+            t = System.nanoTime();
+            index.suggest(prefixes[i], 8);
+            suggest[i] = System.nanoTime() - t;
+        }
+
+        System.out.printf("%-26s %-12s %-12s %-12s%n", "query", "avg(us)", "p50(us)", "p99(us)");
+        print("nearest (k-d tree)", indexNearest);
+        print("nearest (scan)", scanNearest);
+        print("providersNear (k-d tree)", indexProviders);
+        print("providersNear (scan)", scanProviders);
+        print("suggest (prefix, top 8)", suggest);
+        System.out.println("Mismatches against the scan: " + mismatches);
+    }
+
+    private static CoverageIndex.Location syntheticLocation(Random random, int i) {
+        // Clustered like real settlement: most places near one of a few hundred centres
+        Random centres = new Random(random.nextInt(300));
+        double lat = 42 + centres.nextDouble() * 13 + random.nextGaussian() * 0.3;
+        double lon = -128 + centres.nextDouble() * 75 + random.nextGaussian() * 0.5;
+
+        StringBuilder name = new StringBuilder();
+        int syllables = 2 + random.nextInt(3);
+        for (int s = 0; s < syllables; s++) {
+            name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+        name.append(' ').append(i);
+
+        int providerCount = 1 + random.nextInt(4);
+        String[] providers = new String[providerCount];
+        int[] technologies = new int[providerCount];
+        int first = random.nextInt(PROVIDERS.length);
+        for (int p = 0; p < providerCount; p++) {
+            providers[p] = PROVIDERS[(first + p) % PROVIDERS.length];
+            technologies[p] = 1 + random.nextInt(7);
+        }
+        int population = (int) (100 * Math.pow(1 - random.nextDouble(), -1.2));
+        return new CoverageIndex.Location(name.toString(), PROVINCES[random.nextInt(PROVINCES.length)], lat, lon,
+                population, providers, technologies);
+    }
+
+    private static CoverageIndex.Location scanNearest(List<CoverageIndex.Location> locations, double lat, double lon) {
+        CoverageIndex.Location best = null;
+        double bestKm = Double.MAX_VALUE;
+        for (CoverageIndex.Location location : locations) {
+            double km = haversineKm(lat, lon, location.latitude, location.longitude);
+            if (km < bestKm) {
+                bestKm = km;
+                best = location;
+            }
+        }
+        return best;
+    }
+
+    private static Map<String, Integer> scanProviders(List<CoverageIndex.Location> locations, double lat, double lon,
+            double radiusKm) {
+        Map<String, Integer> providers = new TreeMap<>();
+        for (CoverageIndex.Location location : locations) {
+            if (haversineKm(lat, lon, location.latitude, location.longitude) <= radiusKm) {
+                for (int p = 0; p < location.providers.length; p++) {
+                    providers.merge(location.providers[p], location.technologies[p], (a, b) -> a | b);
+                }
+            }
+        }
+        return providers;
+    }
+
+    private static double haversineKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) + Math.cos(Math.toRadians(lat1))
+                * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * 6371.0088 * Math.asin(Math.sqrt(a));
+    }
+
+    private static void print(String label, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long n : sorted) {
+            sum += n;
+        }
+        System.out.printf("%-26s %-12.1f %-12.1f %-12.1f%n", label, sum / (double) sorted.length / 1000,
+                sorted[sorted.length / 2] / 1000.0, sorted[(int) (sorted.length * 0.99)] / 1000.0);
+    }
+}
@@ -0,0 +1,636 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.*;
+
+// Read-only index over the coverage dataset (coverage.csv): places with coordinates and the
+// providers and technologies available there.
+//
+// Spatial queries use a k-d tree over points on the unit sphere (x, y, z), where straight-line
+// (chord) distance orders points exactly like distance along the Earth's surface, so no
+// projection is needed anywhere in Canada. The tree is implicit: points are reordered so each
+// subtree is a contiguous range with its root in the middle, and every subtree keeps its
+// bounding box and the union of its coverage. "Providers near a point" can then take whole
+// subtrees that lie inside the radius without visiting their points, and stops as soon as
+// every provider has been seen.
+//
+// Autocomplete binary-searches a sorted array of normalised "name, province" keys for the
+// prefix range, and a range-max tree over population returns its k largest places in
+// O(k log n) however many places share the prefix.
+public class CoverageIndex {
+
+    public static final int TECH_5G = 1;
+    public static final int TECH_LTE = 2;
+    public static final int TECH_3G = 4;
+    private static final String[] TECH_NAMES = { "5G", "LTE", "3G" };
+
+    // Three technology bits per provider in a long
+    private static final int MAX_PROVIDERS = 21;
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    public static class Location {
+        public final String name;
+        public final String province;
+        public final double latitude;
+        public final double longitude;
+        public final int population;
+        public final String[] providers;
+        public final int[] technologies; // TECH_* bits per provider
+
+        public Location(String name, String province, double latitude, double longitude, int population,
+                String[] providers, int[] technologies) {
+            this.name = name;
+            this.province = province;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.population = population;
+            this.providers = providers;
+            this.technologies = technologies;
+        }
+
+        public String label() {
+            return province.isEmpty() ? name : name + ", " + province;
+        }
+    }
+
+    public static class Nearby {
+        public final Location location;
+        public final double distanceKm;
+
+        Nearby(Location location, double distanceKm) {
+            this.location = location;
+            this.distanceKm = distanceKm;
+        }
+    }
+
+    private final String[] providerNames;
+    private final long allCoverage;
+
+    // Tree order: the subtree over [lo, hi) has its root at (lo + hi) >>> 1
+    private final Location[] locations;
+    private final double[] x;
+    private final double[] y;
+    private final double[] z;
+    private final long[] coverage;
+    private final byte[] splitAxis;
+    // Per subtree root: bounding box and the union of coverage below it
+    private final double[] boxMin;
+    private final double[] boxMax;
+    private final long[] subtreeCoverage;
+
+    // Autocomplete: keys sorted, with the tree-order index of each key's location
+    private final String[] keys;
+    private final int[] keyLocation;
+    private final int[] maxTree;
+    private final int leaves;
+
+    public CoverageIndex(List<Location> input) {
+        int n = input.size();
+        Map<String, Integer> providerIds = new LinkedHashMap<>();
+        long[] inputCoverage = new long[n];
+        for (int i = 0; i < n; i++) {
+            Location location = input.get(i);
+            for (int p = 0; p < location.providers.length; p++) {
+                Integer id = providerIds.get(location.providers[p]);
+                if (id == null) {
+                    if (providerIds.size() == MAX_PROVIDERS) {
+                        throw new IllegalArgumentException("At most " + MAX_PROVIDERS + " providers are supported");
+                    }
+                    id = providerIds.size();
+                    providerIds.put(location.providers[p], id);
+                }
+                inputCoverage[i] |= (long) (location.technologies[p] & 7) << (id * 3);
+            }
+        }
+        providerNames = providerIds.keySet().toArray(new String[0]);
+        long all = 0;
+        for (long c : inputCoverage) {
+            all |= c;
+        }
+        allCoverage = all;
+
+        int[] order = new int[n];
+        double[][] points = new double[n][];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+            points[i] = toUnitVector(input.get(i).latitude, input.get(i).longitude);
+        }
+
+        locations = new Location[n];
+        x = new double[n];
+        y = new double[n];
+        z = new double[n];
+        coverage = new long[n];
+        splitAxis = new byte[n];
+        boxMin = new double[n * 3];
+        boxMax = new double[n * 3];
+        subtreeCoverage = new long[n];
+        build(order, points, 0, n);
+        for (int i = 0; i < n; i++) {
+            locations[i] = input.get(order[i]);
+            x[i] = points[order[i]][0];
+            y[i] = points[order[i]][1];
+            z[i] = points[order[i]][2];
+            coverage[i] = inputCoverage[order[i]];
+        }
+        summarise(0, n);
+
+        Integer[] byKey = new Integer[n];
+        String[] allKeys = new String[n];
+        for (int i = 0; i < n; i++) {
+            byKey[i] = i;
+            allKeys[i] = normalise(locations[i].label());
+        }
+        Arrays.sort(byKey, Comparator.comparing((Integer i) -> allKeys[i]));
+        keys = new String[n];
+        keyLocation = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = allKeys[byKey[i]];
+            keyLocation[i] = byKey[i];
+        }
+
+        int size = 1;
+        while (size < Math.max(1, n)) {
+            size <<= 1;
+        }
+        leaves = size;
+        maxTree = new int[size * 2];
+        Arrays.fill(maxTree, -1);
+        for (int i = 0; i < n; i++) {
+            maxTree[size + i] = i;
+        }
+        for (int node = size - 1; node >= 1; node--) {
+            maxTree[node] = larger(maxTree[node * 2], maxTree[node * 2 + 1]);
+        }
+    }
+
+    // Reads the CSV described at the top of coverage.csv; lines starting with '#' are comments
+    public static CoverageIndex load(File file) throws IOException {
+        List<Location> loaded = new ArrayList<>();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            CsvParser.parse(reader, new CsvParser.RecordHandler() {
+                @Override
+                public void record(String[] fields, long line) {
+                    if (fields.length == 0 || fields[0].startsWith("#") || fields[0].equals("City")) {
+                        return;
+                    }
+                    if (fields.length < 6) {
+                        malformed(line, "expected 6 columns");
+                        return;
+                    }
+                    try {
+                        List<String> providers = new ArrayList<>();
+                        List<Integer> technologies = new ArrayList<>();
+                        for (String entry : fields[5].split(";")) {
+                            int colon = entry.indexOf(':');
+                            if (colon <= 0) {
+                                continue;
+                            }
+                            providers.add(entry.substring(0, colon).trim());
+                            technologies.add(parseTechnologies(entry.substring(colon + 1)));
+                        }
+                        int[] techs = new int[technologies.size()];
+                        for (int i = 0; i < techs.length; i++) {
+                            techs[i] = technologies.get(i);
+                        }
+                        double latitude = Double.parseDouble(fields[2].trim());
+                        double longitude = Double.parseDouble(fields[3].trim());
+                        // A NaN point would spread into the bounding boxes of every subtree
+                        // holding it, and radius queries would quietly miss places
+                        if (!(Math.abs(latitude) <= 90) || !(Math.abs(longitude) <= 180)) {
+                            malformed(line, "coordinates out of range: " + fields[2].trim() + ", "
+                                    + fields[3].trim());
+                            return;
+                        }
+                        loaded.add(new Location(fields[0].trim(), fields[1].trim(), latitude, longitude,
+                                Integer.parseInt(fields[4].trim()), providers.toArray(new String[0]), techs));
+                    } catch (NumberFormatException e) {
+                        malformed(line, e.getMessage());
+                    }
+                }
+
+                @Override
+                public void malformed(long line, String reason) {
+                    System.out.println("Skipping " + file.getName() + " line " + line + ": " + reason);
+                }
+            });
+        }
+        return new CoverageIndex(loaded);
+    }
+
+    public int size() {
+        return locations.length;
+    }
+
+    // k closest places, closest first
+    public List<Nearby> nearest(double latitude, double longitude, int k) {
+        if (k <= 0 || locations.length == 0) {
+            return Collections.emptyList();
+        }
+        double[] q = queryVector(latitude, longitude);
+        // Max-heap on distance holding the best k so far
+        PriorityQueue<double[]> best = new PriorityQueue<>(k + 1, (a, b) -> Double.compare(b[0], a[0]));
+        nearest(q, 0, locations.length, k, best);
+
+        List<Nearby> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            double[] entry = best.poll();
+            result.add(new Nearby(locations[(int) entry[1]], chordToKm(Math.sqrt(entry[0]))));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    // Places within the radius, closest first, at most limit of them
+    public List<Nearby> withinRadius(double latitude, double longitude, double radiusKm, int limit) {
+        double[] q = queryVector(latitude, longitude);
+        checkRadius(radiusKm);
+        double r2 = square(kmToChord(radiusKm));
+        List<Integer> found = new ArrayList<>();
+        collect(q, r2, 0, locations.length, found);
+
+        List<Nearby> result = new ArrayList<>(found.size());
+        for (int i : found) {
+            result.add(new Nearby(locations[i], chordToKm(Math.sqrt(distance2(q, i)))));
+        }
+        result.sort(Comparator.comparingDouble(n -> n.distanceKm));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    // Providers with coverage anywhere within the radius, as provider -> TECH_* bits
+    public Map<String, Integer> providersNear(double latitude, double longitude, double radiusKm) {
+        double[] q = queryVector(latitude, longitude);
+        checkRadius(radiusKm);
+        long mask = coverageWithin(q, square(kmToChord(radiusKm)), 0, locations.length, 0L);
+        return decode(mask);
+    }
+
+    // Places whose "name, province" starts with the prefix (case and accents ignored),
+    // most populous first
+    public List<Location> suggest(String prefix, int limit) {
+        String key = normalise(prefix);
+        if (key.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        int from = lowerBound(key);
+        int to = lowerBound(key + Character.MAX_VALUE);
+        List<Location> result = new ArrayList<>();
+        if (from >= to) {
+            return result;
+        }
+
+        // Each entry is a key range and its most populous key; taking the best and splitting
+        // its range around it yields the ranges' places in population order
+        PriorityQueue<int[]> ranges = new PriorityQueue<>(
+                (a, b) -> Integer.compare(population(b[2]), population(a[2])));
+        ranges.add(new int[] { from, to, rangeMax(from, to) });
+        while (!ranges.isEmpty() && result.size() < limit) {
+            int[] range = ranges.poll();
+            int best = range[2];
+            result.add(locations[keyLocation[best]]);
+            if (range[0] < best) {
+                ranges.add(new int[] { range[0], best, rangeMax(range[0], best) });
+            }
+            if (best + 1 < range[1]) {
+                ranges.add(new int[] { best + 1, range[1], rangeMax(best + 1, range[1]) });
+            }
+        }
+        return result;
+    }
+
+    public static List<String> technologyNames(int technologies) {
+        List<String> names = new ArrayList<>();
+        for (int t = 0; t < TECH_NAMES.length; t++) {
+            if ((technologies & (1 << t)) != 0) {
+                names.add(TECH_NAMES[t]);
+            }
+        }
+        return names;
+    }
+
+    // "5g", "lte", "3g" or anything else (e.g. "all") for every technology
+    public static int technologyMask(String network) {
+        int bit = technologyBit(network);
+        return bit != 0 ? bit : TECH_5G | TECH_LTE | TECH_3G;
+    }
+
+    private static int technologyBit(String name) {
+        if (name == null) {
+            return 0;
+        }
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "5g":
+                return TECH_5G;
+            case "lte":
+            case "4g":
+                return TECH_LTE;
+            case "3g":
+            case "hspa+":
+                return TECH_3G;
+            default:
+                return 0;
+        }
+    }
+
+    private static int parseTechnologies(String text) {
+        int technologies = 0;
+        for (String tech : text.split("/")) {
+            technologies |= technologyBit(tech);
+        }
+        return technologies;
+    }
+
+    // --- k-d tree ---
+
+    // Splits [lo, hi) on the widest axis at the median, recursively
+    private void build(int[] order, double[][] points, int lo, int hi) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        int axis = widestAxis(order, points, lo, hi);
+        int mid = (lo + hi) >>> 1;
+        select(order, points, axis, lo, hi - 1, mid);
+        splitAxis[mid] = (byte) axis;
+        build(order, points, lo, mid);
+        build(order, points, mid + 1, hi);
+    }
+
+    private static int widestAxis(int[] order, double[][] points, int lo, int hi) {
+        double[] min = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+        double[] max = { -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+        for (int i = lo; i < hi; i++) {
+            double[] p = points[order[i]];
+            for (int a = 0; a < 3; a++) {
+                min[a] = Math.min(min[a], p[a]);
+                max[a] = Math.max(max[a], p[a]);
+            }
+        }
+        int axis = 0;
+        for (int a = 1; a < 3; a++) {
+            if (max[a] - min[a] > max[axis] - min[axis]) {
+                axis = a;
+            }
+        }
+        return axis;
+    }
+
+    // Quickselect: afterwards order[k] holds the k-th smallest on the axis within [lo, hi]
+    private static void select(int[] order, double[][] points, int axis, int lo, int hi, int k) {
+        while (lo < hi) {
+            double pivot = points[order[(lo + hi) >>> 1]][axis];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (points[order[i]][axis] < pivot) {
+                    i++;
+                }
+                while (points[order[j]][axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int t = order[i];
+                    order[i] = order[j];
+                    order[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    // Fills in bounding boxes and coverage unions bottom-up
+    private void summarise(int lo, int hi) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        summarise(lo, mid);
+        summarise(mid + 1, hi);
+
+        double[] point = { x[mid], y[mid], z[mid] };
+        long union = coverage[mid];
+        for (int a = 0; a < 3; a++) {
+            boxMin[mid * 3 + a] = point[a];
+            boxMax[mid * 3 + a] = point[a];
+        }
+        for (int child : new int[] { lo < mid ? (lo + mid) >>> 1 : -1, mid + 1 < hi ? (mid + 1 + hi) >>> 1 : -1 }) {
+            if (child < 0) {
+                continue;
+            }
+            for (int a = 0; a < 3; a++) {
+                boxMin[mid * 3 + a] = Math.min(boxMin[mid * 3 + a], boxMin[child * 3 + a]);
+                boxMax[mid * 3 + a] = Math.max(boxMax[mid * 3 + a], boxMax[child * 3 + a]);
+            }
+            union |= subtreeCoverage[child];
+        }
+        subtreeCoverage[mid] = union;
+    }
+
+    private void nearest(double[] q, int lo, int hi, int k, PriorityQueue<double[]> best) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (best.size() == k && boxDistance2(q, mid) >= best.peek()[0]) {
+            return;
+        }
+        double d2 = distance2(q, mid);
+        if (best.size() < k) {
+            best.add(new double[] { d2, mid });
+        } else if (d2 < best.peek()[0]) {
+            best.poll();
+            best.add(new double[] { d2, mid });
+        }
+
+        // Nearer side first, so the far side is usually pruned
+        int axis = splitAxis[mid];
+        boolean lowFirst = q[axis] < coordinate(mid, axis);
+        nearest(q, lowFirst ? lo : mid + 1, lowFirst ? mid : hi, k, best);
+        nearest(q, lowFirst ? mid + 1 : lo, lowFirst ? hi : mid, k, best);
+    }
+
+    private void collect(double[] q, double r2, int lo, int hi, List<Integer> found) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (boxDistance2(q, mid) > r2) {
+            return;
+        }
+        if (boxFarDistance2(q, mid) <= r2) {
+            for (int i = lo; i < hi; i++) {
+                found.add(i);
+            }
+            return;
+        }
+        if (distance2(q, mid) <= r2) {
+            found.add(mid);
+        }
+        collect(q, r2, lo, mid, found);
+        collect(q, r2, mid + 1, hi, found);
+    }
+
+    private long coverageWithin(double[] q, double r2, int lo, int hi, long mask) {
+        if (lo >= hi || mask == allCoverage) {
+            return mask;
+        }
+        int mid = (lo + hi) >>> 1;
+        // Nothing new below, or nothing below in range
+        if ((subtreeCoverage[mid] & ~mask) == 0 || boxDistance2(q, mid) > r2) {
+            return mask;
+        }
+        if (boxFarDistance2(q, mid) <= r2) {
+            return mask | subtreeCoverage[mid];
+        }
+        if (distance2(q, mid) <= r2) {
+            mask |= coverage[mid];
+        }
+        mask = coverageWithin(q, r2, lo, mid, mask);
+        return coverageWithin(q, r2, mid + 1, hi, mask);
+    }
+
+    private double coordinate(int i, int axis) {
+        return axis == 0 ? x[i] : axis == 1 ? y[i] : z[i];
+    }
+
+    private double distance2(double[] q, int i) {
+        return square(q[0] - x[i]) + square(q[1] - y[i]) + square(q[2] - z[i]);
+    }
+
+    // Squared distance from q to the nearest point of the subtree's box
+    private double boxDistance2(double[] q, int node) {
+        double sum = 0;
+        for (int a = 0; a < 3; a++) {
+            double lo = boxMin[node * 3 + a];
+            double hi = boxMax[node * 3 + a];
+            if (q[a] < lo) {
+                sum += square(lo - q[a]);
+            } else if (q[a] > hi) {
+                sum += square(q[a] - hi);
+            }
+        }
+        return sum;
+    }
+
+    // Squared distance from q to the farthest corner of the subtree's box
+    private double boxFarDistance2(double[] q, int node) {
+        double sum = 0;
+        for (int a = 0; a < 3; a++) {
+            sum += Math.max(square(q[a] - boxMin[node * 3 + a]), square(q[a] - boxMax[node * 3 + a]));
+        }
+        return sum;
+    }
+
+    // --- autocomplete ---
+
+    private int lowerBound(String key) {
+        int lo = 0;
+        int hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Key position with the largest population in [from, to)
+    private int rangeMax(int from, int to) {
+        int best = -1;
+        for (int lo = from + leaves, hi = to + leaves; lo < hi; lo >>= 1, hi >>= 1) {
+            if ((lo & 1) == 1) {
+                best = larger(best, maxTree[lo++]);
+            }
+            if ((hi & 1) == 1) {
+                best = larger(best, maxTree[--hi]);
+            }
+        }
+        return best;
+    }
+
+    private int larger(int a, int b) {
+        if (a < 0) {
+            return b;
+        }
+        if (b < 0) {
+            return a;
+        }
+        int pa = population(a);
+        int pb = population(b);
+        return pa != pb ? (pa > pb ? a : b) : Math.min(a, b);
+    }
+
+    private int population(int keyIndex) {
+        return locations[keyLocation[keyIndex]].population;
+    }
+
+    // Lower-case without accents, so "montreal" also finds the accented spelling
+    static String normalise(String text) {
+        String decomposed = Normalizer.normalize(text.trim(), Normalizer.Form.NFD);
+        StringBuilder key = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                key.append(Character.toLowerCase(c));
+            }
+        }
+        return key.toString();
+    }
+
+    // --- geometry ---
+
+    private Map<String, Integer> decode(long mask) {
+        Map<String, Integer> providers = new LinkedHashMap<>();
+        for (int id = 0; id < providerNames.length; id++) {
+            int technologies = (int) (mask >>> (id * 3)) & 7;
+            if (technologies != 0) {
+                providers.put(providerNames[id], technologies);
+            }
+        }
+        return providers;
+    }
+
+    // A NaN coordinate compares false against every split plane, so no subtree would be pruned
+    // and each query would visit every place
+    private static double[] queryVector(double latitude, double longitude) {
+        if (!(Math.abs(latitude) <= 90) || !Double.isFinite(longitude)) {
+            throw new IllegalArgumentException("Invalid coordinates: " + latitude + ", " + longitude);
+        }
+        return toUnitVector(latitude, longitude);
+    }
+
+    private static void checkRadius(double radiusKm) {
+        if (!(radiusKm >= 0) || Double.isInfinite(radiusKm)) {
+            throw new IllegalArgumentException("Invalid radius: " + radiusKm);
+        }
+    }
+
+    private static double[] toUnitVector(double latitude, double longitude) {
+        double lat = Math.toRadians(latitude);
+        double lon = Math.toRadians(longitude);
+        return new double[] { Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat) };
+    }
+
+    private static double kmToChord(double km) {
+        double angle = Math.min(Math.PI, Math.max(0, km) / EARTH_RADIUS_KM);
+        return 2 * Math.sin(angle / 2);
+    }
+
+    private static double chordToKm(double chord) {
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, chord / 2));
+    }
+
+    private static double square(double v) {
+        return v * v;
+    }
+}
@@ -0,0 +1,275 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.LongFunction;
+
+// RFC 4180 CSV parser fed from char buffers: quoted fields may hold commas, line breaks
+// and doubled quotes. Rows that break the grammar are reported, not guessed at.
+public class CsvParser {
+
+    public interface RecordHandler {
+        void record(String[] fields, long line);
+
+        void malformed(long line, String reason);
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Files at least this large are split into chunks and parsed in parallel
+    static final long PARALLEL_THRESHOLD = 8L * 1024 * 1024;
+
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+
+    private final RecordHandler handler;
+    private final List<String> fields = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+    private int state = FIELD_START;
+    private boolean afterCarriageReturn;
+    private String error;
+    private long line;
+    private long recordLine;
+
+    public CsvParser(RecordHandler handler, long firstLine) {
+        this.handler = handler;
+        this.line = firstLine;
+        this.recordLine = firstLine;
+    }
+
+    public static void parse(Reader reader, RecordHandler handler) throws IOException {
+        CsvParser parser = new CsvParser(handler, 1);
+        char[] buffer = new char[BUFFER_SIZE];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            parser.feed(buffer, 0, read);
+        }
+        parser.finish();
+    }
+
+    public void feed(char[] buffer, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            char c = buffer[i];
+
+            if (afterCarriageReturn) {
+                afterCarriageReturn = false;
+                if (c == '\n') {
+                    continue; // second half of a CRLF already ended the record
+                }
+            }
+
+            switch (state) {
+                case FIELD_START:
+                    if (c == '"') {
+                        state = QUOTED;
+                    } else if (c == ',') {
+                        endField();
+                    } else if (c == '\n' || c == '\r') {
+                        endRecord(c);
+                    } else {
+                        field.append(c);
+                        state = UNQUOTED;
+                    }
+                    break;
+                case UNQUOTED:
+                    if (c == ',') {
+                        endField();
+                    } else if (c == '\n' || c == '\r') {
+                        endRecord(c);
+                    } else {
+                        field.append(c); // a stray quote inside an unquoted field is kept as text
+                    }
+                    break;
+                case QUOTED:
+                    if (c == '"') {
+                        state = QUOTE_IN_QUOTED;
+                    } else {
+                        if (c == '\n') {
+                            line++;
+                        }
+                        field.append(c);
+                    }
+                    break;
+                case QUOTE_IN_QUOTED:
+                    if (c == '"') {
+                        field.append('"');
+                        state = QUOTED;
+                    } else if (c == ',') {
+                        endField();
+                    } else if (c == '\n' || c == '\r') {
+                        endRecord(c);
+                    } else {
+                        if (error == null) {
+                            error = "text after closing quote";
+                        }
+                        field.append(c);
+                        state = UNQUOTED;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown CSV parser state: " + state);
+            }
+        }
+    }
+
+    public void finish() {
+        if (state == QUOTED) {
+            error = "unterminated quoted field";
+        }
+        if (state != FIELD_START || !fields.isEmpty()) {
+            endRecord('\n');
+            line--; // no line break was actually read
+        }
+    }
+
+    private void endField() {
+        fields.add(field.toString());
+        field.setLength(0);
+        state = FIELD_START;
+    }
+
+    private void endRecord(char terminator) {
+        boolean blank = fields.isEmpty() && state == FIELD_START;
+        endField();
+        if (error != null) {
+            handler.malformed(recordLine, error);
+        } else if (!blank) {
+            handler.record(fields.toArray(new String[0]), recordLine);
+        }
+        fields.clear();
+        error = null;
+        afterCarriageReturn = terminator == '\r';
+        line++;
+        recordLine = line;
+    }
+
+    // Parses a whole file. Large files are mapped, cut at record boundaries and the chunks
+    // parsed in parallel, each straight into its own handler from handlers (given the chunk's
+    // first line number), so no rows are buffered between parsing and handling. Returns the
+    // handlers in file order; a file parsed in one piece has one handler, for line 1.
+    public static <H extends RecordHandler> List<H> parseFile(File file, ForkJoinPool pool,
+            LongFunction<H> handlers) throws IOException {
+        long size = file.length();
+        if (size < PARALLEL_THRESHOLD || size > Integer.MAX_VALUE || pool.getParallelism() < 2) {
+            H handler = handlers.apply(1);
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                parse(reader, handler);
+            }
+            return Collections.singletonList(handler);
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int chunkCount = pool.getParallelism() * 4;
+            List<long[]> chunks = findChunks(bytes, Math.max(BUFFER_SIZE, (int) (size / chunkCount)));
+
+            List<H> chunkHandlers = new ArrayList<>();
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (long[] chunk : chunks) {
+                H handler = handlers.apply(chunk[2]);
+                chunkHandlers.add(handler);
+                tasks.add(ForkJoinTask.adapt(() -> parseChunk(bytes, (int) chunk[0], (int) chunk[1], chunk[2],
+                        handler)));
+            }
+            if (ForkJoinTask.inForkJoinPool()) {
+                ForkJoinTask.invokeAll(tasks);
+            } else {
+                pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+            return chunkHandlers;
+        }
+    }
+
+    // The first record of a file, or null when it has none; only reads as far as that record
+    public static String[] firstRecord(File file) throws IOException {
+        String[][] first = new String[1][];
+        CsvParser parser = new CsvParser(new RecordHandler() {
+            @Override
+            public void record(String[] fields, long line) {
+                if (first[0] == null) {
+                    first[0] = fields;
+                }
+            }
+
+            @Override
+            public void malformed(long line, String reason) {
+            }
+        }, 1);
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            char[] buffer = new char[4096];
+            int read;
+            while (first[0] == null && (read = reader.read(buffer)) != -1) {
+                parser.feed(buffer, 0, read);
+            }
+        }
+        if (first[0] == null) {
+            parser.finish();
+        }
+        return first[0];
+    }
+
+    // One sequential pass over the raw bytes with the quoting rules only, so every cut
+    // lands on a line break outside quotes. Delimiters are ASCII, which is safe in UTF-8.
+    // Returns {start, end, firstLine} per chunk.
+    private static List<long[]> findChunks(ByteBuffer bytes, int targetSize) {
+        List<long[]> chunks = new ArrayList<>();
+        int limit = bytes.limit();
+        int start = 0;
+        long startLine = 1;
+        long line = 1;
+        boolean quoted = false;
+        boolean fieldStart = true;
+
+        for (int i = 0; i < limit; i++) {
+            byte b = bytes.get(i);
+            if (quoted) {
+                if (b == '"') {
+                    if (i + 1 < limit && bytes.get(i + 1) == '"') {
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (b == '\n') {
+                    line++;
+                }
+                continue;
+            }
+            if (b == '"' && fieldStart) {
+                quoted = true;
+            } else if (b == '\n') {
+                line++;
+                if (i + 1 - start >= targetSize) {
+                    chunks.add(new long[] { start, i + 1, startLine });
+                    start = i + 1;
+                    startLine = line;
+                }
+            }
+            fieldStart = b == ',' || b == '\n' || b == '\r';
+        }
+        if (start < limit) {
+            chunks.add(new long[] { start, limit, startLine });
+        }
+        return chunks;
+    }
+
+    private static void parseChunk(ByteBuffer bytes, int start, int end, long firstLine, RecordHandler handler) {
+        ByteBuffer slice = bytes.duplicate();
+        slice.position(start).limit(end);
+        CharBuffer chars = StandardCharsets.UTF_8.decode(slice);
+
+        CsvParser parser = new CsvParser(handler, firstLine);
+        parser.feed(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+        parser.finish();
+    }
+}
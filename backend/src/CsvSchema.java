@@ -0,0 +1,152 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Column mapping from one provider's CSV layout to InternetPlan, read from csv_schemas.properties.
+// Each plan field is a template: {n} is replaced by column n (trimmed), anything else is literal.
+public class CsvSchema {
+
+    private static final String[] FIELDS = { "provider", "planName", "price", "speed", "data", "features", "category",
+            "url" };
+
+    private final String name;
+    private final String match;
+    private final String provider;
+    private final int minColumns;
+    private final boolean inferCategory;
+    // Per field: literal segments at even positions, column indexes (as Integer) at odd positions
+    private final Map<String, Object[]> templates = new HashMap<>();
+
+    private CsvSchema(String name, Properties config) {
+        this.name = name;
+        this.match = require(config, name + ".match").toLowerCase();
+        this.provider = require(config, name + ".provider");
+        this.minColumns = Integer.parseInt(config.getProperty(name + ".minColumns", "1").trim());
+        this.inferCategory = "auto".equalsIgnoreCase(config.getProperty(name + ".category", "").trim());
+        for (String field : FIELDS) {
+            templates.put(field, compile(config.getProperty(name + "." + field, "")));
+        }
+    }
+
+    public static List<CsvSchema> loadAll(File file) throws IOException {
+        Properties config = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            config.load(reader);
+        }
+
+        List<CsvSchema> schemas = new ArrayList<>();
+        for (String name : require(config, "schemas").split(",")) {
+            if (!name.trim().isEmpty()) {
+                schemas.add(new CsvSchema(name.trim(), config));
+            }
+        }
+        return schemas;
+    }
+
+    // First schema whose match text appears in the file name, as the old fileName.contains chain did
+    public static CsvSchema forFile(List<CsvSchema> schemas, String fileName) {
+        String lower = fileName.toLowerCase();
+        for (CsvSchema schema : schemas) {
+            if (lower.contains(schema.match)) {
+                return schema;
+            }
+        }
+        return null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    // Returns null when the row has fewer columns than the schema needs
+    public SearchEngine.InternetPlan map(String[] columns) {
+        if (columns.length < minColumns) {
+            return null;
+        }
+
+        String provider = apply("provider", columns);
+        String planName = apply("planName", columns);
+        String price = SearchEngine.extractPrice(apply("price", columns));
+        String speed = apply("speed", columns);
+        String data = apply("data", columns);
+        String features = apply("features", columns);
+        String category = apply("category", columns);
+        String url = apply("url", columns);
+
+        // Providers that mix mobile and home internet in one file: a speed in the data
+        // column means home internet, and the value moves over to speed
+        if (inferCategory) {
+            String lowerData = data.toLowerCase();
+            boolean internet = planName.toLowerCase().contains("internet") || lowerData.contains("mbps")
+                    || lowerData.contains("gbps");
+            category = internet ? "Home Internet" : "Mobile";
+            speed = internet ? data : "4G/5G";
+            data = internet ? "Unlimited" : data;
+        }
+
+        return new SearchEngine.InternetPlan(provider, planName, price, speed, data, features, category, url);
+    }
+
+    private String apply(String field, String[] columns) {
+        Object[] parts = templates.get(field);
+        if (parts.length == 1) {
+            return (String) parts[0];
+        }
+
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < parts.length; i++) {
+            if (i % 2 == 0) {
+                value.append((String) parts[i]);
+            } else {
+                int column = (Integer) parts[i];
+                if (column < columns.length) {
+                    value.append(columns[column].trim());
+                }
+            }
+        }
+        return value.toString().trim();
+    }
+
+    // Splits "Rogers Internet {3}" into {"Rogers Internet ", 3, ""} once, at load time
+    private static Object[] compile(String template) {
+        List<Object> parts = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < template.length()) {
+            char c = template.charAt(i);
+            int close = c == '{' ? template.indexOf('}', i) : -1;
+            if (close > i + 1 && isDigits(template, i + 1, close)) {
+                parts.add(literal.toString());
+                parts.add(Integer.parseInt(template.substring(i + 1, close)));
+                literal.setLength(0);
+                i = close + 1;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        parts.add(literal.toString());
+        return parts.toArray();
+    }
+
+    private static boolean isDigits(String s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String require(Properties config, String key) {
+        String value = config.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing CSV schema property: " + key);
+        }
+        return value.trim();
+    }
+}
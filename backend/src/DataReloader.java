@@ -0,0 +1,165 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Rebuilds the server's data off the request path when its files change or /api/reload asks.
+// Rebuilds run one at a time on a low-priority thread; requests that arrive during one collapse
+// into a single follow-up, so a burst of changes costs at most two rebuilds. File changes are
+// seen through a WatchService on the files' directories and debounced, so an editor's save or
+// a large copy triggers one rebuild rather than one per write. Publishing the result is up to
+// the Rebuild, which should swap it in with a single reference write.
+public class DataReloader {
+
+    public interface Rebuild {
+        // Builds and publishes new data; returns a one-line summary for the status
+        String run() throws Exception;
+    }
+
+    private final Set<Path> watchedFiles = new HashSet<>();
+    private final Rebuild rebuild;
+    private final long debounceMs;
+    private final ExecutorService worker;
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private Thread watcherThread;
+    private WatchService watcher;
+
+    // Status, written by the worker thread
+    private volatile boolean running;
+    private volatile long completed;
+    private volatile long failed;
+    private volatile String lastReason;
+    private volatile String lastSummary;
+    private volatile String lastError;
+    private volatile long lastFinishedAt;
+    private volatile long lastDurationMs;
+
+    public DataReloader(Collection<File> files, Rebuild rebuild, long debounceMs) {
+        for (File file : files) {
+            watchedFiles.add(file.getAbsoluteFile().toPath().normalize());
+        }
+        this.rebuild = rebuild;
+        this.debounceMs = debounceMs;
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "data-reload");
+            thread.setDaemon(true);
+            // Serving threads go first; a rebuild only needs to finish eventually
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    // Watches the directories of the data files; missing files are picked up once created
+    public void startWatching() throws IOException {
+        watcher = FileSystems.getDefault().newWatchService();
+        Set<Path> directories = new HashSet<>();
+        for (Path file : watchedFiles) {
+            Path directory = file.getParent();
+            if (directory != null && Files.isDirectory(directory) && directories.add(directory)) {
+                directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+        watcherThread = new Thread(this::watch, "data-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+        System.out.println("Watching " + watchedFiles.size() + " data files in " + directories.size()
+                + " directories for changes");
+    }
+
+    public void stop() {
+        if (watcherThread != null) {
+            watcherThread.interrupt();
+        }
+        worker.shutdownNow();
+    }
+
+    // Schedules a rebuild; false when one is already waiting to start, which will see this change
+    public boolean request(String reason) {
+        if (!pending.compareAndSet(false, true)) {
+            return false;
+        }
+        worker.execute(() -> runRebuild(reason));
+        return true;
+    }
+
+    public String getStatusJson() {
+        return String.format(Locale.ROOT,
+                "{\"running\": %b, \"pending\": %b, \"completed\": %d, \"failed\": %d, \"lastReason\": %s, "
+                        + "\"lastSummary\": %s, \"lastError\": %s, \"lastFinishedAt\": %d, \"lastDurationMs\": %d}",
+                running, pending.get(), completed, failed, quote(lastReason), quote(lastSummary),
+                quote(lastError), lastFinishedAt, lastDurationMs);
+    }
+
+    private void runRebuild(String reason) {
+        // Cleared before building, so changes made from here on schedule another rebuild
+        pending.set(false);
+        running = true;
+        lastReason = reason;
+        long start = System.nanoTime();
+        try {
+            lastSummary = rebuild.run();
+            lastError = null;
+            completed++;
+            System.out.println("Data reloaded (" + lastReason + "): " + lastSummary);
+        } catch (Exception | OutOfMemoryError e) {
+            lastError = e.toString();
+            failed++;
+            System.out.println("Error reloading data, keeping the current data: " + e);
+        } finally {
+            lastDurationMs = (System.nanoTime() - start) / 1_000_000;
+            lastFinishedAt = System.currentTimeMillis();
+            running = false;
+        }
+    }
+
+    private void watch() {
+        Set<String> changed = new TreeSet<>();
+        long lastChangeAt = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                // Waits for the first change, then until none to a data file for debounceMs
+                WatchKey key;
+                if (changed.isEmpty()) {
+                    key = watcher.take();
+                } else {
+                    long quietFor = System.currentTimeMillis() - lastChangeAt;
+                    if (quietFor >= debounceMs) {
+                        request("changed: " + String.join(", ", changed));
+                        changed.clear();
+                        continue;
+                    }
+                    key = watcher.poll(debounceMs - quietFor, TimeUnit.MILLISECONDS);
+                    if (key == null) {
+                        continue;
+                    }
+                }
+                Path directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        changed.add("(events lost)");
+                        lastChangeAt = System.currentTimeMillis();
+                        continue;
+                    }
+                    Path file = directory.resolve((Path) event.context()).normalize();
+                    if (watchedFiles.contains(file)) {
+                        changed.add(file.getFileName().toString());
+                        lastChangeAt = System.currentTimeMillis();
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopping
+        }
+    }
+
+    private static String quote(String s) {
+        if (s == null) {
+            return "null";
+        }
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", " ").replace("\r", "") + "\"";
+    }
+}
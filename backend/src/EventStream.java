@@ -0,0 +1,280 @@
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+// Server-Sent Events for /api/events: crawl progress, terms added to the index by a crawl and
+// index stats. Producers only update pending state; one flusher thread turns whatever changed
+// during the last tick into a single frame and hands the same bytes to every subscriber.
+// On the NIO transport a thousand dashboards (the default cap there) cost one serialisation
+// per tick; the JDK transport adds a writer thread per subscriber and is capped at 64 by
+// default. A page that adds thousands of terms becomes one event rather than thousands.
+//
+// Events (each data line is JSON):
+//   hello  on connect: the current crawl and index state, so no initial request is needed
+//   crawl  state of the current crawl, at most once per tick while it changes
+//   terms  terms new to the index since the last tick, capped, with the number left out
+//   index  term and plan counts and the top words, only when the index changed
+// There are no event ids: a client that reconnects gets the full state again in its hello.
+public class EventStream implements WebCrawlerService.CrawlListener {
+
+    // Receives frames on the flusher thread and on subscribe; must not block, so a transport
+    // with blocking writes queues the frame for a writer of its own
+    public interface Subscriber {
+        // false once the subscriber is gone, which unsubscribes it
+        boolean send(byte[] frame);
+
+        void close();
+    }
+
+    private static final long FLUSH_INTERVAL_MS = 250;
+    private static final long STATS_INTERVAL_MS = 2000;
+    private static final long HEARTBEAT_INTERVAL_MS = 15000;
+    private static final int MAX_TERMS_PER_EVENT = 100;
+    private static final int TOP_WORDS = 20;
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    // The engine currently serving, which changes when the data is reloaded
+    private final Supplier<SearchEngine> searchEngine;
+    private final int maxSubscribers;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService flusher;
+
+    // Current crawl, guarded by this
+    private String crawlUrl;
+    private boolean crawlRunning;
+    private long crawlPages;
+    private long crawlBytes;
+    private long crawlErrors;
+    private String crawlLastError;
+    private boolean crawlChanged;
+
+    // Terms indexed since the last flush, guarded by this
+    private final List<String> pendingTerms = new ArrayList<>();
+    private int droppedTerms;
+
+    // Owned by the flusher thread
+    private SearchEngine lastEngine;
+    private long lastIndexVersion = -1;
+    private long lastStatsAt;
+    private int lastTermCount;
+    private String lastTop = "";
+    private volatile String indexJson = "{}";
+    private long lastSendAt = System.currentTimeMillis();
+
+    public EventStream(Supplier<SearchEngine> searchEngine, int maxSubscribers) {
+        this.searchEngine = searchEngine;
+        this.maxSubscribers = maxSubscribers;
+    }
+
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "event-stream-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushSafely, 0, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+        subscribers.clear();
+    }
+
+    public boolean isFull() {
+        return subscribers.size() >= maxSubscribers;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    // Sends the hello event and adds the subscriber; false when the stream is full. The hello
+    // is handed over before the subscriber is added, so it always comes before the first batch.
+    public boolean subscribe(Subscriber subscriber) {
+        synchronized (subscribers) {
+            if (isFull()) {
+                return false;
+            }
+            String crawl;
+            synchronized (this) {
+                crawl = crawlJson();
+            }
+            String hello = "{\"crawl\": " + crawl + ", \"index\": " + indexJson + "}";
+            if (!subscriber.send(frame("hello", hello).getBytes(StandardCharsets.UTF_8))) {
+                return false;
+            }
+            subscribers.add(subscriber);
+            return true;
+        }
+    }
+
+    public void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    // Called by whoever indexes crawled pages, with the terms that were new to the index
+    public synchronized void termsIndexed(Collection<String> terms) {
+        for (String term : terms) {
+            if (pendingTerms.size() < MAX_TERMS_PER_EVENT) {
+                pendingTerms.add(term);
+            } else {
+                droppedTerms++;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void crawlStarted(String startUrl) {
+        crawlUrl = startUrl;
+        crawlRunning = true;
+        crawlPages = 0;
+        crawlBytes = 0;
+        crawlErrors = 0;
+        crawlLastError = null;
+        crawlChanged = true;
+    }
+
+    @Override
+    public synchronized void pageFetched(String url, long bytes, String text) {
+        crawlPages++;
+        crawlBytes += bytes;
+        crawlChanged = true;
+    }
+
+    @Override
+    public synchronized void pageFailed(String url, String error) {
+        crawlErrors++;
+        crawlLastError = url + ": " + error;
+        crawlChanged = true;
+    }
+
+    @Override
+    public synchronized void crawlFinished(String startUrl, int pages) {
+        crawlRunning = false;
+        crawlChanged = true;
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // An exception would cancel the scheduled task and silently end the stream
+            System.out.println("Error flushing events: " + e.getMessage());
+        }
+    }
+
+    private void flush() {
+        long now = System.currentTimeMillis();
+        StringBuilder batch = new StringBuilder();
+
+        synchronized (this) {
+            if (crawlChanged) {
+                batch.append(frame("crawl", crawlJson()));
+                crawlChanged = false;
+            }
+            if (!pendingTerms.isEmpty()) {
+                StringBuilder terms = new StringBuilder("{\"terms\": [");
+                for (int i = 0; i < pendingTerms.size(); i++) {
+                    if (i > 0)
+                        terms.append(",");
+                    terms.append("\"").append(SearchEngine.escapeJsonValue(pendingTerms.get(i))).append("\"");
+                }
+                terms.append("], \"more\": ").append(droppedTerms).append("}");
+                batch.append(frame("terms", terms.toString()));
+                pendingTerms.clear();
+                droppedTerms = 0;
+            }
+        }
+
+        // Recomputing stats walks the index, so it happens at most every STATS_INTERVAL_MS
+        // and only when something was indexed since the last time
+        if (now - lastStatsAt >= STATS_INTERVAL_MS) {
+            lastStatsAt = now;
+            String index = indexDelta();
+            if (index != null) {
+                batch.append(frame("index", index));
+            }
+        }
+
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        byte[] frame;
+        if (batch.length() > 0) {
+            frame = batch.toString().getBytes(StandardCharsets.UTF_8);
+        } else if (now - lastSendAt >= HEARTBEAT_INTERVAL_MS) {
+            // Keeps proxies from timing the stream out and finds clients that went away
+            frame = HEARTBEAT;
+        } else {
+            return;
+        }
+        lastSendAt = now;
+
+        // A copy, so subscribe() is never held up by a send
+        List<Subscriber> gone = new ArrayList<>();
+        for (Subscriber subscriber : new ArrayList<>(subscribers)) {
+            if (!subscriber.send(frame)) {
+                gone.add(subscriber);
+            }
+        }
+        subscribers.removeAll(gone);
+    }
+
+    // Index stats when the index changed or was replaced since the last call, null otherwise.
+    // The top words are only included when they differ from the ones last sent.
+    private String indexDelta() {
+        SearchEngine engine = searchEngine.get();
+        long version = engine.getIndexVersion();
+        if (engine == lastEngine && version == lastIndexVersion) {
+            return null;
+        }
+        lastEngine = engine;
+        lastIndexVersion = version;
+
+        int termCount = engine.getTermCount();
+        StringBuilder top = new StringBuilder("[");
+        List<Map.Entry<String, Integer>> words = engine.topFrequencies(TOP_WORDS);
+        for (int i = 0; i < words.size(); i++) {
+            if (i > 0)
+                top.append(",");
+            top.append(String.format("{\"word\": \"%s\", \"count\": %d}",
+                    SearchEngine.escapeJsonValue(words.get(i).getKey()), words.get(i).getValue()));
+        }
+        top.append("]");
+        String topJson = top.toString();
+        int plans = engine.getPlanStore().size();
+
+        indexJson = String.format("{\"version\": %d, \"terms\": %d, \"plans\": %d, \"top\": %s}",
+                version, termCount, plans, topJson);
+        StringBuilder delta = new StringBuilder(String.format(
+                "{\"version\": %d, \"terms\": %d, \"termsAdded\": %d, \"plans\": %d",
+                version, termCount, termCount - lastTermCount, plans));
+        if (!topJson.equals(lastTop)) {
+            delta.append(", \"top\": ").append(topJson);
+        }
+        delta.append("}");
+        lastTermCount = termCount;
+        lastTop = topJson;
+        return delta.toString();
+    }
+
+    // Caller holds this
+    private String crawlJson() {
+        if (crawlUrl == null) {
+            return "null";
+        }
+        return String.format("{\"url\": \"%s\", \"running\": %b, \"pages\": %d, \"bytes\": %d, \"errors\": %d, \"lastError\": %s}",
+                SearchEngine.escapeJsonValue(crawlUrl), crawlRunning, crawlPages, crawlBytes, crawlErrors,
+                crawlLastError == null ? "null" : "\"" + SearchEngine.escapeJsonValue(crawlLastError) + "\"");
+    }
+
+    private static String frame(String event, String json) {
+        return "event: " + event + "\ndata: " + json + "\n\n";
+    }
+}
@@ -0,0 +1,256 @@
+import java.util.*;
+
+// Visible text of a saved HTML page in one pass: a line per run of text between tags, with
+// whitespace collapsed and entities decoded. The contents of script, style, noscript, svg and
+// template elements are skipped, and so is the "theirs" half of any merge conflict left in
+// the file (the same rule SearchEngine applies to CSVs). Also picks up the page title and its
+// canonical URL. Not a validating parser: it only needs to be right about where text is.
+public class HtmlText {
+
+    private static final Set<String> SKIPPED = new HashSet<>(
+            Arrays.asList("script", "style", "noscript", "svg", "template"));
+    private static final Map<String, String> ENTITIES = new HashMap<>();
+
+    static {
+        String[] pairs = { "amp", "&", "lt", "<", "gt", ">", "quot", "\"", "apos", "'", "nbsp", " ",
+                "reg", "\u00AE", "copy", "\u00A9", "trade", "\u2122", "ndash", "-", "mdash", "-",
+                "rsquo", "'", "lsquo", "'", "rdquo", "\"", "ldquo", "\"", "hellip", "...",
+                "dagger", "\u2020", "eacute", "\u00E9", "egrave", "\u00E8", "agrave", "\u00E0" };
+        for (int i = 0; i < pairs.length; i += 2) {
+            ENTITIES.put(pairs[i], pairs[i + 1]);
+        }
+    }
+
+    private final List<String> lines = new ArrayList<>();
+    private String title = "";
+    private String canonicalUrl = "";
+
+    private HtmlText() {
+    }
+
+    public List<String> getLines() {
+        return lines;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getCanonicalUrl() {
+        return canonicalUrl;
+    }
+
+    public static HtmlText parse(String html) {
+        HtmlText page = new HtmlText();
+        page.read(withoutConflicts(html));
+        return page;
+    }
+
+    private void read(String html) {
+        StringBuilder run = new StringBuilder();
+        int n = html.length();
+        int i = 0;
+        while (i < n) {
+            char c = html.charAt(i);
+            if (c == '<' && i + 1 < n && startsTag(html.charAt(i + 1))) {
+                addLine(run);
+                if (html.startsWith("<!--", i)) {
+                    int end = html.indexOf("-->", i + 4);
+                    i = end < 0 ? n : end + 3;
+                    continue;
+                }
+                int start = i;
+                int close = tagEnd(html, i + 1);
+                String name = tagName(html, i + 1, close);
+                boolean closing = html.charAt(i + 1) == '/';
+                i = close < n ? close + 1 : n;
+                if (closing) {
+                    continue;
+                }
+                if (SKIPPED.contains(name) && close < n && html.charAt(close - 1) != '/') {
+                    i = afterClosingTag(html, i, name);
+                } else if (name.equals("title") && title.isEmpty()) {
+                    int end = indexOfIgnoreCase(html, "</title", i);
+                    title = decode(html.substring(i, end < 0 ? n : end)).replaceAll("\\s+", " ").trim();
+                    i = end < 0 ? n : end;
+                } else if ((name.equals("link") || name.equals("meta")) && canonicalUrl.isEmpty()) {
+                    canonicalUrl = canonical(html.substring(start, Math.min(close, n)));
+                }
+                continue;
+            }
+            if (c == '&') {
+                int semi = html.indexOf(';', i);
+                if (semi > i && semi - i <= 10) {
+                    String decoded = entity(html.substring(i + 1, semi));
+                    if (decoded != null) {
+                        appendText(run, decoded);
+                        i = semi + 1;
+                        continue;
+                    }
+                }
+            }
+            appendChar(run, c);
+            i++;
+        }
+        addLine(run);
+    }
+
+    private static boolean startsTag(char c) {
+        return Character.isLetter(c) || c == '/' || c == '!' || c == '?';
+    }
+
+    // Index of the '>' closing the tag that starts at from, skipping quoted attribute values
+    private static int tagEnd(String html, int from) {
+        char quote = 0;
+        for (int i = from; i < html.length(); i++) {
+            char c = html.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i;
+            }
+        }
+        return html.length();
+    }
+
+    private static String tagName(String html, int from, int close) {
+        int start = html.charAt(from) == '/' ? from + 1 : from;
+        int end = start;
+        while (end < close && (Character.isLetterOrDigit(html.charAt(end)) || html.charAt(end) == '-')) {
+            end++;
+        }
+        return html.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    private static int afterClosingTag(String html, int from, String name) {
+        int end = indexOfIgnoreCase(html, "</" + name, from);
+        if (end < 0) {
+            return html.length();
+        }
+        int close = html.indexOf('>', end);
+        return close < 0 ? html.length() : close + 1;
+    }
+
+    private static int indexOfIgnoreCase(String html, String target, int from) {
+        for (int i = html.indexOf('<', from); i >= 0; i = html.indexOf('<', i + 1)) {
+            if (html.regionMatches(true, i, target, 0, target.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // href of <link rel="canonical">, or content of <meta property="og:url">, else ""
+    private static String canonical(String tag) {
+        String lower = tag.toLowerCase(Locale.ROOT);
+        if (lower.contains("rel=\"canonical\"")) {
+            return attribute(tag, lower, "href");
+        }
+        if (lower.contains("property=\"og:url\"")) {
+            return attribute(tag, lower, "content");
+        }
+        return "";
+    }
+
+    private static String attribute(String tag, String lower, String name) {
+        int at = lower.indexOf(" " + name + "=\"");
+        if (at < 0) {
+            return "";
+        }
+        int start = at + name.length() + 3;
+        int end = tag.indexOf('"', start);
+        return end < 0 ? "" : decode(tag.substring(start, end));
+    }
+
+    private static String decode(String text) {
+        if (text.indexOf('&') < 0) {
+            return text;
+        }
+        StringBuilder decoded = new StringBuilder(text.length());
+        int i = 0;
+        while (i < text.length()) {
+            int semi = text.charAt(i) == '&' ? text.indexOf(';', i) : -1;
+            String entity = semi > i && semi - i <= 10 ? entity(text.substring(i + 1, semi)) : null;
+            if (entity != null) {
+                decoded.append(entity);
+                i = semi + 1;
+            } else {
+                decoded.append(text.charAt(i++));
+            }
+        }
+        return decoded.toString();
+    }
+
+    // "amp" -> "&", "#36" -> "$", "#x24" -> "$"; null for anything unknown
+    private static String entity(String name) {
+        if (name.startsWith("#")) {
+            try {
+                int code = name.length() > 1 && (name.charAt(1) == 'x' || name.charAt(1) == 'X')
+                        ? Integer.parseInt(name.substring(2), 16) : Integer.parseInt(name.substring(1));
+                return Character.isValidCodePoint(code) ? new String(Character.toChars(code)) : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return ENTITIES.get(name);
+    }
+
+    private static void appendText(StringBuilder run, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            appendChar(run, text.charAt(i));
+        }
+    }
+
+    // Collapses whitespace as a browser does, with no leading space on a new line, and drops
+    // invisible formatting characters such as direction marks
+    private static void appendChar(StringBuilder run, char c) {
+        if (Character.getType(c) == Character.FORMAT) {
+            return;
+        }
+        if (Character.isWhitespace(c) || c == '\u00A0') {
+            if (run.length() > 0 && run.charAt(run.length() - 1) != ' ') {
+                run.append(' ');
+            }
+        } else {
+            run.append(c);
+        }
+    }
+
+    private void addLine(StringBuilder run) {
+        int length = run.length();
+        if (length > 0 && run.charAt(length - 1) == ' ') {
+            length--;
+        }
+        if (length > 0) {
+            lines.add(run.substring(0, length));
+        }
+        run.setLength(0);
+    }
+
+    // Drops conflict marker lines and everything between ======= and >>>>>>>
+    private static String withoutConflicts(String html) {
+        if (!html.contains("\n=======")) {
+            return html;
+        }
+        StringBuilder kept = new StringBuilder(html.length());
+        boolean inTheirs = false;
+        int start = 0;
+        while (start < html.length()) {
+            int end = html.indexOf('\n', start);
+            end = end < 0 ? html.length() : end + 1;
+            if (html.startsWith("=======", start)) {
+                inTheirs = true;
+            } else if (html.startsWith(">>>>>>>", start)) {
+                inTheirs = false;
+            } else if (!inTheirs && !html.startsWith("<<<<<<<", start)) {
+                kept.append(html, start, end);
+            }
+            start = end;
+        }
+        return kept.toString();
+    }
+}
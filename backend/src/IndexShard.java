@@ -0,0 +1,161 @@
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class IndexShard {
+
+    // Inverted Index for the documents routed to this shard: Word -> (Document -> Count)
+    private final Map<String, Map<String, Integer>> invertedIndex = new HashMap<>();
+
+    // Queries share the read lock, so concurrent searches scan a shard in parallel; only
+    // indexing (at load and for crawled pages) takes the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock read = lock.readLock();
+    private final Lock write = lock.writeLock();
+
+    // True when the word was not in this shard before
+    public boolean add(String word, String docKey, int count) {
+        write.lock();
+        try {
+            Map<String, Integer> docMap = invertedIndex.get(word);
+            boolean added = docMap == null;
+            if (added) {
+                docMap = new HashMap<>();
+                invertedIndex.put(word, docMap);
+            }
+            docMap.merge(docKey, count, Integer::sum);
+            return added;
+        } finally {
+            write.unlock();
+        }
+    }
+
+    public boolean containsTerm(String word) {
+        read.lock();
+        try {
+            return invertedIndex.containsKey(word);
+        } finally {
+            read.unlock();
+        }
+    }
+
+    // Top-K documents for a set of weighted terms in RESULT_ORDER. A min-heap of
+    // size K keeps the scan at O(n log K) instead of sorting every posting. A hit's
+    // count is its occurrences of all the terms; the penalty for typo neighbours is in
+    // the score, and a hit is exact when one of its terms has full weight (the query).
+    public List<SearchEngine.SearchHit> topK(String[] terms, double[] weights, int k) {
+        if (k <= 0) {
+            return Collections.emptyList();
+        }
+
+        Collection<SearchEngine.SearchHit> hits = hits(terms, weights);
+        if (hits.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (k >= hits.size()) {
+            // Every hit is returned, so a plain sort beats pushing them all through the heap
+            List<SearchEngine.SearchHit> results = new ArrayList<>(hits);
+            results.sort(SearchEngine.RESULT_ORDER);
+            return results;
+        }
+
+        PriorityQueue<SearchEngine.SearchHit> heap = new PriorityQueue<>(Math.min(k, hits.size()) + 1,
+                SearchEngine.RESULT_ORDER.reversed());
+        for (SearchEngine.SearchHit hit : hits) {
+            if (heap.size() < k) {
+                heap.offer(hit);
+            } else if (SearchEngine.RESULT_ORDER.compare(hit, heap.peek()) < 0) {
+                heap.poll();
+                heap.offer(hit);
+            }
+        }
+
+        List<SearchEngine.SearchHit> results = new ArrayList<>(heap);
+        results.sort(SearchEngine.RESULT_ORDER);
+        return results;
+    }
+
+    // Every document matching the terms, unsorted
+    public void collectHits(String[] terms, double[] weights, Collection<SearchEngine.SearchHit> out) {
+        out.addAll(hits(terms, weights));
+    }
+
+    private Collection<SearchEngine.SearchHit> hits(String[] terms, double[] weights) {
+        read.lock();
+        try {
+            return terms.length == 1 ? singleTermHits(terms[0], weights[0]) : mergedHits(terms, weights);
+        } finally {
+            read.unlock();
+        }
+    }
+
+    // An exact-term query needs no per-document merging, just one hit per posting
+    private List<SearchEngine.SearchHit> singleTermHits(String term, double weight) {
+        Map<String, Integer> postings = invertedIndex.get(term);
+        if (postings == null) {
+            return Collections.emptyList();
+        }
+        List<SearchEngine.SearchHit> hits = new ArrayList<>(postings.size());
+        for (Map.Entry<String, Integer> entry : postings.entrySet()) {
+            SearchEngine.SearchHit hit = new SearchEngine.SearchHit(entry.getKey());
+            hit.count = entry.getValue();
+            hit.score = entry.getValue() * weight;
+            hit.exact = weight == 1.0;
+            hits.add(hit);
+        }
+        return hits;
+    }
+
+    private Collection<SearchEngine.SearchHit> mergedHits(String[] terms, double[] weights) {
+        Map<String, SearchEngine.SearchHit> hits = new HashMap<>();
+        for (int t = 0; t < terms.length; t++) {
+            Map<String, Integer> postings = invertedIndex.get(terms[t]);
+            if (postings == null) {
+                continue;
+            }
+            boolean exact = weights[t] == 1.0;
+            for (Map.Entry<String, Integer> entry : postings.entrySet()) {
+                SearchEngine.SearchHit hit = hits.computeIfAbsent(entry.getKey(), SearchEngine.SearchHit::new);
+                hit.count += entry.getValue();
+                hit.score += entry.getValue() * weights[t];
+                hit.exact |= exact;
+            }
+        }
+        return hits.values();
+    }
+
+    public void collectTerms(Collection<String> terms) {
+        read.lock();
+        try {
+            terms.addAll(invertedIndex.keySet());
+        } finally {
+            read.unlock();
+        }
+    }
+
+    // Adds this shard's total count per word into the given map
+    public void collectFrequencies(Map<String, Integer> totals) {
+        read.lock();
+        try {
+            for (Map.Entry<String, Map<String, Integer>> entry : invertedIndex.entrySet()) {
+                int sum = 0;
+                for (int count : entry.getValue().values()) {
+                    sum += count;
+                }
+                totals.merge(entry.getKey(), sum, Integer::sum);
+            }
+        } finally {
+            read.unlock();
+        }
+    }
+
+    public int termCount() {
+        read.lock();
+        try {
+            return invertedIndex.size();
+        } finally {
+            read.unlock();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+import java.util.*;
+
+// Accepts every word within maxEdits insertions, deletions or substitutions of a pattern.
+// A state is one row of the edit-distance table (capped at maxEdits + 1), so stepping
+// a character is O(pattern length) and a state with every cell over the limit is dead.
+public class LevenshteinAutomaton {
+
+    public static class Match {
+        public final String term;
+        public final int distance;
+
+        public Match(String term, int distance) {
+            this.term = term;
+            this.distance = distance;
+        }
+    }
+
+    private final char[] pattern;
+    private final int maxEdits;
+
+    public LevenshteinAutomaton(String pattern, int maxEdits) {
+        this.pattern = pattern.toCharArray();
+        this.maxEdits = maxEdits;
+    }
+
+    public int[] start() {
+        int[] row = new int[pattern.length + 1];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = Math.min(i, maxEdits + 1);
+        }
+        return row;
+    }
+
+    public int[] step(int[] row, char c) {
+        int[] next = new int[row.length];
+        next[0] = Math.min(row[0] + 1, maxEdits + 1);
+        for (int i = 1; i < row.length; i++) {
+            int cost = pattern[i - 1] == c ? 0 : 1;
+            int value = Math.min(row[i - 1] + cost, Math.min(row[i] + 1, next[i - 1] + 1));
+            next[i] = Math.min(value, maxEdits + 1);
+        }
+        return next;
+    }
+
+    // False once no continuation of the input read so far can be accepted
+    public boolean canMatch(int[] row) {
+        for (int value : row) {
+            if (value <= maxEdits) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isAccepting(int[] row) {
+        return row[row.length - 1] <= maxEdits;
+    }
+
+    public int distance(int[] row) {
+        return row[row.length - 1];
+    }
+
+    // Walks a sorted term dictionary, reusing the states of the prefix shared with the
+    // previous term. When a prefix kills the automaton, every term starting with it is
+    // skipped with one binary search, so only the reachable part of the dictionary is read.
+    public List<Match> intersect(String[] sortedTerms) {
+        List<Match> matches = new ArrayList<>();
+        List<int[]> states = new ArrayList<>();
+        states.add(start());
+        String previous = "";
+
+        int i = 0;
+        while (i < sortedTerms.length) {
+            String term = sortedTerms[i];
+            int depth = commonPrefix(previous, term);
+
+            int deadAt = -1;
+            while (depth < term.length()) {
+                int[] next = step(states.get(depth), term.charAt(depth));
+                depth++;
+                if (depth < states.size()) {
+                    states.set(depth, next);
+                } else {
+                    states.add(next);
+                }
+                if (!canMatch(next)) {
+                    deadAt = depth;
+                    break;
+                }
+            }
+
+            if (deadAt >= 0) {
+                String deadPrefix = term.substring(0, deadAt);
+                previous = deadPrefix;
+                i = skipPrefix(sortedTerms, i + 1, deadPrefix);
+                continue;
+            }
+
+            int[] state = states.get(term.length());
+            if (isAccepting(state)) {
+                matches.add(new Match(term, distance(state)));
+            }
+            previous = term;
+            i++;
+        }
+        return matches;
+    }
+
+    // First index at or after from whose term does not start with prefix
+    private static int skipPrefix(String[] sortedTerms, int from, String prefix) {
+        int lo = from, hi = sortedTerms.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedTerms[mid].startsWith(prefix)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,113 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Floods /api/spellcheck with misspelled words from many threads while a single client keeps
+// calling /api/suggest, and reports the status codes of both and the suggest latency.
+// The flood is spread over simulated clients, each with its own X-Forwarded-For address, so
+// it is not all caught by one client's token bucket and the concurrency limit (503) is
+// exercised too. Start BackendServer first with -Dadmission.clientHeader=X-Forwarded-For
+// (and then with -Dadmission=off) and compare the runs; without the header setting every
+// request counts as the one local client.
+// Usage: java LoadTest [baseUrl] [floodThreads] [seconds] [clients]
+public class LoadTest {
+
+    private static final String[] MISSPELLED = { "plann", "unlimted", "rogres", "intenet", "moble", "cannada",
+            "proviedr", "telefone", "wireles", "datta", "prepiad", "contarct" };
+    private static final String[] PREFIXES = { "p", "pl", "un", "in", "mo", "da", "ro", "be" };
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int floodThreads = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int clients = args.length > 3 ? Integer.parseInt(args[3]) : floodThreads;
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Map<Integer, Integer> floodStatus = new ConcurrentHashMap<>();
+        ExecutorService flooders = Executors.newFixedThreadPool(floodThreads);
+        for (int t = 0; t < floodThreads; t++) {
+            int seed = t;
+            flooders.submit(() -> {
+                Random random = new Random(seed);
+                while (running.get()) {
+                    String word = MISSPELLED[random.nextInt(MISSPELLED.length)] + (char) ('a' + random.nextInt(26));
+                    // Threads take turns at the client addresses, so each request may come from another
+                    String client = clientAddress(random.nextInt(Math.max(1, clients)));
+                    floodStatus.merge(get(baseUrl + "/api/spellcheck?word=" + encode(word), client), 1,
+                            Integer::sum);
+                }
+            });
+        }
+
+        // Let the flood build up before measuring the interactive endpoint
+        Thread.sleep(1000);
+        Map<Integer, Integer> suggestStatus = new TreeMap<>();
+        List<Long> latencies = new ArrayList<>();
+        Random random = new Random(42);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < end) {
+            long start = System.nanoTime();
+            int status = get(baseUrl + "/api/suggest?prefix=" + PREFIXES[random.nextInt(PREFIXES.length)],
+                    "10.255.255.1");
+            latencies.add(System.nanoTime() - start);
+            suggestStatus.merge(status, 1, Integer::sum);
+            Thread.sleep(20);
+        }
+
+        running.set(false);
+        flooders.shutdown();
+        flooders.awaitTermination(30, TimeUnit.SECONDS);
+
+        Collections.sort(latencies);
+        System.out.printf("Flood: %d threads as %d clients on /api/spellcheck for %d s%n", floodThreads, clients,
+                seconds);
+        System.out.println("  spellcheck status: " + new TreeMap<>(floodStatus));
+        System.out.println("  suggest status:    " + suggestStatus);
+        System.out.printf("  suggest latency:   p50 %.1f ms, p99 %.1f ms, max %.1f ms (%d requests)%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.99),
+                latencies.isEmpty() ? 0.0 : latencies.get(latencies.size() - 1) / 1e6, latencies.size());
+    }
+
+    // 10.0.0.1, 10.0.0.2, ... for simulated client n = 0, 1, ...
+    private static String clientAddress(int n) {
+        return "10." + (n >> 16 & 255) + "." + (n >> 8 & 255) + "." + ((n & 255) + 1);
+    }
+
+    // Status code, or -1 on a connection error or timeout
+    private static int get(String url, String client) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setRequestProperty("X-Forwarded-For", client);
+            connection.setConnectTimeout(5000);
+            connection.setReadTimeout(30000);
+            int status = connection.getResponseCode();
+            InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (body != null) {
+                // Drain so the connection goes back to the keep-alive pool
+                try (InputStream in = body) {
+                    in.readAllBytes();
+                }
+            }
+            return status;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        return sorted.get(Math.min(sorted.size() - 1, (int) (sorted.size() * p))) / 1e6;
+    }
+}
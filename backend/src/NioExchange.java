@@ -0,0 +1,228 @@
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+
+// HttpExchange backed by NioHttpServer, so the existing HttpHandlers run unchanged on it.
+// The response body is buffered and handed back to the connection's event loop on close().
+public class NioExchange extends HttpExchange {
+
+    private final String method;
+    private final URI uri;
+    private final String protocol;
+    private final Headers requestHeaders;
+    private final Headers responseHeaders = new Headers();
+    private final InputStream requestBody;
+    private final InetSocketAddress remoteAddress;
+    private final InetSocketAddress localAddress;
+    private final boolean keepAlive;
+    private final Consumer<ByteBuffer[]> onComplete;
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private OutputStream responseBody = new FilterOutputStream(body) {
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (responseCode == -1) {
+                throw new IOException("sendResponseHeaders must be called before writing the body");
+            }
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            NioExchange.this.close();
+        }
+    };
+    private InputStream requestStream;
+    private int responseCode = -1;
+    private boolean noBody;
+    private boolean completed;
+
+    NioExchange(String method, URI uri, String protocol, Headers requestHeaders, byte[] requestBody,
+            InetSocketAddress remoteAddress, InetSocketAddress localAddress, boolean keepAlive,
+            Consumer<ByteBuffer[]> onComplete) {
+        this.method = method;
+        this.uri = uri;
+        this.protocol = protocol;
+        this.requestHeaders = requestHeaders;
+        this.requestBody = new ByteArrayInputStream(requestBody);
+        this.requestStream = this.requestBody;
+        this.remoteAddress = remoteAddress;
+        this.localAddress = localAddress;
+        this.keepAlive = keepAlive;
+        this.onComplete = onComplete;
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return uri;
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return method;
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return null; // contexts are plain path prefixes in NioHttpServer
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return requestStream;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return responseBody;
+    }
+
+    // Same contract as the JDK server: -1 means no body. The whole body is buffered, so it
+    // always goes out with an exact Content-Length rather than chunked.
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+        if (responseCode != -1) {
+            throw new IOException("Response headers already sent");
+        }
+        responseCode = rCode;
+        noBody = responseLength == -1;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return localAddress;
+    }
+
+    @Override
+    public String getProtocol() {
+        return protocol;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        if (i != null) {
+            requestStream = i;
+        }
+        if (o != null) {
+            responseBody = o;
+        }
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+
+    boolean isCompleted() {
+        return completed;
+    }
+
+    // Ends the exchange. A handler that never sent headers gets a 500.
+    @Override
+    public void close() {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        if (responseCode == -1) {
+            responseCode = 500;
+            noBody = true;
+        }
+
+        byte[] payload = noBody || "HEAD".equals(method) ? new byte[0] : body.toByteArray();
+        long contentLength = noBody ? 0 : body.size();
+        onComplete.accept(new ByteBuffer[] {
+                encodeHead(responseCode, responseHeaders, contentLength, keepAlive),
+                ByteBuffer.wrap(payload) });
+    }
+
+    static ByteBuffer encodeHead(int code, Map<String, List<String>> headers, long contentLength,
+            boolean keepAlive) {
+        StringBuilder head = new StringBuilder(256);
+        head.append("HTTP/1.1 ").append(code).append(' ').append(reason(code)).append("\r\n");
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            String name = header.getKey();
+            if (name.equalsIgnoreCase("Content-Length") || name.equalsIgnoreCase("Connection")) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                head.append(name).append(": ").append(value).append("\r\n");
+            }
+        }
+        // A negative length leaves it out: the body then runs until the connection closes
+        if (contentLength >= 0 && code != 204 && code != 304) {
+            head.append("Content-Length: ").append(contentLength).append("\r\n");
+        }
+        head.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n\r\n");
+        return ByteBuffer.wrap(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static String reason(int code) {
+        switch (code) {
+            case 200:
+                return "OK";
+            case 204:
+                return "No Content";
+            case 400:
+                return "Bad Request";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 413:
+                return "Payload Too Large";
+            case 429:
+                return "Too Many Requests";
+            case 431:
+                return "Request Header Fields Too Large";
+            case 500:
+                return "Internal Server Error";
+            case 501:
+                return "Not Implemented";
+            case 503:
+                return "Service Unavailable";
+            default:
+                return "Status";
+        }
+    }
+}
@@ -0,0 +1,523 @@
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Selector-based HTTP/1.1 server with keep-alive and pipelining, as an alternative to the JDK
+// HttpServer. A few event loops own the sockets; handlers run on a worker pool so a slow
+// /api/crawl never stalls I/O. Snapshot routes are answered on the event loop itself by writing
+// a shared direct buffer to the socket. Event stream routes keep the connection open and
+// queue each EventStream frame on it, so a subscriber costs no thread.
+public class NioHttpServer {
+
+    private static final int READ_CHUNK = 16 * 1024;
+    private static final int MAX_HEAD_BYTES = 16 * 1024;
+    private static final int MAX_BODY_BYTES = 8 * 1024 * 1024;
+    private static final long IDLE_TIMEOUT_MS = 30_000;
+    // Event frames queued on a stream connection before the client is considered stuck
+    private static final int MAX_STREAM_BACKLOG = 256;
+    private static final byte[] HEAD_END = { '\r', '\n', '\r', '\n' };
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final InetSocketAddress address;
+    private final EventLoop[] loops;
+    private final ExecutorService workers;
+    // Path prefix -> handler, matched longest prefix first like HttpServer.createContext
+    private final NavigableMap<String, HttpHandler> contexts = new ConcurrentSkipListMap<>(Comparator.reverseOrder());
+    private final Map<String, Supplier<SnapshotPayload>> snapshots = new ConcurrentHashMap<>();
+    private final Map<String, EventStream> eventStreams = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> eventStreamHeaders = new ConcurrentHashMap<>();
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private ServerSocketChannel serverChannel;
+    private Thread acceptor;
+    private volatile boolean running;
+
+    public NioHttpServer(InetSocketAddress address, int eventLoops, ExecutorService workers) throws IOException {
+        this.address = address;
+        this.workers = workers;
+        this.loops = new EventLoop[Math.max(1, eventLoops)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(i);
+        }
+    }
+
+    public void createContext(String path, HttpHandler handler) {
+        contexts.put(path, handler);
+    }
+
+    // GET requests for exactly this path are served from the supplier's current snapshot
+    public void registerSnapshot(String path, Supplier<SnapshotPayload> snapshot) {
+        snapshots.put(path, snapshot);
+    }
+
+    // GET requests for exactly this path subscribe to the stream until the client disconnects.
+    // headers are added to the text/event-stream response, e.g. CORS headers.
+    public void registerEventStream(String path, EventStream stream, Map<String, String> headers) {
+        eventStreams.put(path, stream);
+        eventStreamHeaders.put(path, headers);
+    }
+
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 1024);
+        running = true;
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+
+        // Blocking accept on its own thread; accepted sockets are spread over the loops
+        acceptor = new Thread(() -> {
+            while (running) {
+                try {
+                    SocketChannel channel = serverChannel.accept();
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+                    loop.execute(() -> loop.register(channel));
+                } catch (IOException e) {
+                    if (running) {
+                        System.out.println("Error accepting connection: " + e.getMessage());
+                    }
+                }
+            }
+        }, "nio-http-accept");
+        acceptor.start();
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException ignored) {
+        }
+        for (EventLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+        workers.shutdown();
+    }
+
+    private HttpHandler findHandler(String path) {
+        for (Map.Entry<String, HttpHandler> context : contexts.entrySet()) {
+            if (path.startsWith(context.getKey())) {
+                return context.getValue();
+            }
+        }
+        return null;
+    }
+
+    private class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final Set<Connection> connections = new HashSet<>();
+        private long lastIdleCheck = System.currentTimeMillis();
+
+        EventLoop(int id) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "nio-http-loop-" + id);
+        }
+
+        // Runs a task on this loop's thread
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(SocketChannel channel) {
+            try {
+                Connection connection = new Connection(this, channel);
+                channel.register(selector, SelectionKey.OP_READ, connection);
+                connections.add(connection);
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select(1000);
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        if (!key.isValid()) {
+                            connection.close();
+                            continue;
+                        }
+                        if (key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    }
+                    closeIdleConnections();
+                } catch (IOException e) {
+                    System.out.println("Event loop error: " + e.getMessage());
+                }
+            }
+            for (Connection connection : new ArrayList<>(connections)) {
+                connection.close();
+            }
+            closeQuietly(selector);
+        }
+
+        private void closeIdleConnections() {
+            long now = System.currentTimeMillis();
+            if (now - lastIdleCheck < 1000) {
+                return;
+            }
+            lastIdleCheck = now;
+            for (Connection connection : new ArrayList<>(connections)) {
+                if (!connection.inFlight && connection.pending.isEmpty()
+                        && now - connection.lastActive > IDLE_TIMEOUT_MS) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    // One socket. Only its event loop touches this state; a worker hands a finished response
+    // back through EventLoop.execute. Requests are handled one at a time in arrival order, so
+    // pipelined requests get their responses in order.
+    private class Connection {
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private final Deque<ByteBuffer> pending = new ArrayDeque<>();
+        private byte[] input = new byte[READ_CHUNK];
+        private int inputLength;
+        private boolean inFlight;
+        // Whether the request waiting for its body has been told to send it
+        private boolean continueSent;
+        private boolean closeAfterWrite;
+        private volatile boolean closed;
+        private Runnable onClose;
+        private long lastActive = System.currentTimeMillis();
+
+        Connection(EventLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+        }
+
+        void onReadable() {
+            try {
+                while (true) {
+                    if (inputLength == input.length) {
+                        input = Arrays.copyOf(input, input.length * 2);
+                    }
+                    int read = channel.read(ByteBuffer.wrap(input, inputLength, input.length - inputLength));
+                    if (read == -1) {
+                        if (onClose != null || (!inFlight && pending.isEmpty())) {
+                            close();
+                        } else {
+                            closeAfterWrite = true;
+                        }
+                        return;
+                    }
+                    if (read == 0) {
+                        break;
+                    }
+                    inputLength += read;
+                    if (inputLength > MAX_HEAD_BYTES + MAX_BODY_BYTES) {
+                        close(); // client keeps sending while nothing is being consumed
+                        return;
+                    }
+                }
+                lastActive = System.currentTimeMillis();
+                processInput();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void processInput() {
+            while (!inFlight && !closeAfterWrite && !closed) {
+                int headEnd = indexOf(input, inputLength, HEAD_END);
+                if (headEnd < 0) {
+                    if (inputLength > MAX_HEAD_BYTES) {
+                        fail(431);
+                    }
+                    return;
+                }
+                if (headEnd > MAX_HEAD_BYTES) {
+                    fail(431);
+                    return;
+                }
+
+                String head = new String(input, 0, headEnd, StandardCharsets.ISO_8859_1);
+                String[] lines = head.split("\r\n");
+                String[] requestLine = lines[0].split(" ");
+                if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+                    fail(400);
+                    return;
+                }
+
+                Headers headers = new Headers();
+                for (int i = 1; i < lines.length; i++) {
+                    int colon = lines[i].indexOf(':');
+                    if (colon <= 0) {
+                        fail(400);
+                        return;
+                    }
+                    headers.add(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+                }
+                if (headers.containsKey("Transfer-Encoding")) {
+                    fail(501); // chunked request bodies are not supported
+                    return;
+                }
+
+                int contentLength;
+                try {
+                    String declared = headers.getFirst("Content-Length");
+                    contentLength = declared == null ? 0 : Integer.parseInt(declared.trim());
+                } catch (NumberFormatException e) {
+                    fail(400);
+                    return;
+                }
+                if (contentLength < 0 || contentLength > MAX_BODY_BYTES) {
+                    fail(413);
+                    return;
+                }
+
+                int bodyStart = headEnd + HEAD_END.length;
+                if (inputLength - bodyStart < contentLength) {
+                    // curl and others hold a larger body back for up to a second unless told
+                    // to go ahead; the size is already known to be within the cap
+                    if (!continueSent && "100-continue".equalsIgnoreCase(headers.getFirst("Expect"))
+                            && requestLine[2].equals("HTTP/1.1")) {
+                        continueSent = true;
+                        pending.add(ByteBuffer.wrap(CONTINUE));
+                        flush();
+                    }
+                    return; // wait for the rest of the body
+                }
+                byte[] body = Arrays.copyOfRange(input, bodyStart, bodyStart + contentLength);
+                consume(bodyStart + contentLength);
+                continueSent = false;
+
+                String method = requestLine[0];
+                String protocol = requestLine[2];
+                String connectionHeader = headers.getFirst("Connection");
+                boolean keepAlive = protocol.equals("HTTP/1.1")
+                        ? !"close".equalsIgnoreCase(connectionHeader)
+                        : "keep-alive".equalsIgnoreCase(connectionHeader);
+
+                URI uri;
+                try {
+                    uri = new URI(requestLine[1]);
+                } catch (Exception e) {
+                    fail(400);
+                    return;
+                }
+                dispatch(method, uri, protocol, headers, body, keepAlive);
+            }
+        }
+
+        private void dispatch(String method, URI uri, String protocol, Headers headers, byte[] body,
+                boolean keepAlive) {
+            inFlight = true;
+            String path = uri.getPath() == null ? "/" : uri.getPath();
+
+            Supplier<SnapshotPayload> snapshot = snapshots.get(path);
+            SnapshotPayload payload = snapshot != null && "GET".equals(method) ? snapshot.get() : null;
+            if (payload != null) {
+                Headers responseHeaders = new Headers();
+                payload.getHeaders().forEach(responseHeaders::set);
+                respond(new ByteBuffer[] { NioExchange.encodeHead(200, responseHeaders, payload.length(), keepAlive),
+                        payload.body() }, keepAlive);
+                return;
+            }
+
+            EventStream stream = eventStreams.get(path);
+            if (stream != null && "GET".equals(method)) {
+                if (!subscribe(stream, eventStreamHeaders.get(path))) {
+                    respond(new ByteBuffer[] { NioExchange.encodeHead(503, new Headers(), 0, keepAlive) }, keepAlive);
+                }
+                return;
+            }
+
+            HttpHandler handler = findHandler(path);
+            NioExchange exchange;
+            try {
+                exchange = new NioExchange(method, uri, protocol, headers, body,
+                        (InetSocketAddress) channel.getRemoteAddress(), (InetSocketAddress) channel.getLocalAddress(),
+                        keepAlive, buffers -> loop.execute(() -> respond(buffers, keepAlive)));
+            } catch (IOException e) {
+                close();
+                return;
+            }
+
+            if (handler == null) {
+                try {
+                    exchange.sendResponseHeaders(404, -1);
+                } catch (IOException ignored) {
+                }
+                exchange.close();
+                return;
+            }
+
+            try {
+                workers.execute(() -> {
+                    try {
+                        handler.handle(exchange);
+                    } catch (Exception e) {
+                        System.out.println("Handler error for " + path + ": " + e.getMessage());
+                    } finally {
+                        exchange.close(); // no-op if the handler already closed it
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                try {
+                    exchange.sendResponseHeaders(503, -1);
+                } catch (IOException ignored) {
+                }
+                exchange.close();
+            }
+        }
+
+        // Turns this connection into an event stream. It stays inFlight, so nothing pipelined
+        // after the request is read, and the response ends when the connection closes.
+        private boolean subscribe(EventStream stream, Map<String, String> headers) {
+            EventStream.Subscriber subscriber = new EventStream.Subscriber() {
+                @Override
+                public boolean send(byte[] frame) {
+                    if (closed) {
+                        return false;
+                    }
+                    loop.execute(() -> {
+                        if (closed) {
+                            return;
+                        }
+                        if (pending.size() >= MAX_STREAM_BACKLOG) {
+                            close(); // not reading: drop it rather than buffer without bound
+                            return;
+                        }
+                        pending.add(ByteBuffer.wrap(frame));
+                        flush();
+                    });
+                    return true;
+                }
+
+                @Override
+                public void close() {
+                    loop.execute(Connection.this::close);
+                }
+            };
+
+            // The head is queued now, on the loop thread, so it goes out before the hello
+            // frame, which subscribe() hands to loop.execute
+            Headers responseHeaders = new Headers();
+            headers.forEach(responseHeaders::set);
+            responseHeaders.set("Content-Type", "text/event-stream; charset=UTF-8");
+            responseHeaders.set("Cache-Control", "no-cache");
+            pending.add(NioExchange.encodeHead(200, responseHeaders, -1, false));
+            if (!stream.subscribe(subscriber)) {
+                pending.clear();
+                return false;
+            }
+            onClose = () -> stream.unsubscribe(subscriber);
+            flush();
+            return true;
+        }
+
+        // Queues a finished response and moves on to the next pipelined request
+        private void respond(ByteBuffer[] buffers, boolean keepAlive) {
+            if (closed) {
+                return;
+            }
+            for (ByteBuffer buffer : buffers) {
+                pending.add(buffer);
+            }
+            inFlight = false;
+            if (!keepAlive) {
+                closeAfterWrite = true;
+            }
+            flush();
+            processInput();
+        }
+
+        // Answers a request that could not be parsed and closes once it is written
+        private void fail(int code) {
+            closeAfterWrite = true;
+            pending.add(NioExchange.encodeHead(code, new Headers(), 0, false));
+            flush();
+        }
+
+        void flush() {
+            try {
+                while (!pending.isEmpty()) {
+                    channel.write(pending.toArray(new ByteBuffer[0]));
+                    while (!pending.isEmpty() && !pending.peek().hasRemaining()) {
+                        pending.poll();
+                    }
+                    if (!pending.isEmpty()) {
+                        // Socket buffer is full: wait until it drains
+                        channel.keyFor(loop.selector).interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+                lastActive = System.currentTimeMillis();
+                if (closeAfterWrite && !inFlight) {
+                    close();
+                } else {
+                    channel.keyFor(loop.selector).interestOps(SelectionKey.OP_READ);
+                }
+            } catch (IOException | CancelledKeyException e) {
+                close();
+            }
+        }
+
+        private void consume(int count) {
+            System.arraycopy(input, count, input, 0, inputLength - count);
+            inputLength -= count;
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (onClose != null) {
+                onClose.run();
+            }
+            loop.connections.remove(this);
+            closeQuietly(channel);
+        }
+    }
+
+    private static int indexOf(byte[] data, int length, byte[] pattern) {
+        outer: for (int i = 0; i + pattern.length <= length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Extracts plans from saved HTML pages (koodo_debug.html and the like) without a browser,
+// using the per-provider rules in snapshot_rules.properties. Pages are read and extracted in
+// parallel; plans are written in file order, first occurrence only, as snapshot_plans.csv,
+// which BackendServer indexes through the "snapshot" CSV schema when started with
+// -Dplans.extraCsv=../snapshot_plans.csv. After a rule change the whole directory is
+// re-extracted in seconds instead of scraping the sites again.
+// Usage: java PlanSnapshotExtractor [snapshotDir] [output.csv] [rules.properties] [threads]
+public class PlanSnapshotExtractor {
+
+    private static final String HEADER = "Provider,Plan Name,Price,Speed,Data,Features,Category,URL,Source";
+    private static final int MAX_WARNINGS = 10;
+
+    private static class PageResult {
+        final Path path;
+        final long bytes;
+        final SnapshotRule rule;
+        final String url;
+        final List<String[]> plans;
+
+        PageResult(Path path, long bytes, SnapshotRule rule, String url, List<String[]> plans) {
+            this.path = path;
+            this.bytes = bytes;
+            this.rule = rule;
+            this.url = url;
+            this.plans = plans;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Paths.get(args.length > 0 ? args[0] : ".");
+        Path output = Paths.get(args.length > 1 ? args[1] : "snapshot_plans.csv");
+        File rulesFile = new File(args.length > 2 ? args[2] : "backend/snapshot_rules.properties");
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        List<SnapshotRule> rules = SnapshotRule.loadAll(rulesFile);
+        List<Path> pages = findPages(dir);
+        System.out.println("Extracting " + pages.size() + " pages under " + dir + " with " + rules.size()
+                + " rules on " + threads + " threads");
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<PageResult>> results = new ArrayList<>();
+        for (Path page : pages) {
+            results.add(pool.submit(() -> extract(page, dir, rules)));
+        }
+
+        long bytes = 0;
+        int plans = 0;
+        int duplicates = 0;
+        int warnings = 0;
+        List<String> unmatched = new ArrayList<>();
+        Map<String, Integer> perProvider = new TreeMap<>();
+        Set<String> seen = new HashSet<>();
+        // Written next to the output and moved over it, so a reader never sees half a file
+        Path temp = output.resolveSibling(output.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER + "\n");
+            for (Future<PageResult> future : results) {
+                PageResult page;
+                try {
+                    page = future.get();
+                } catch (ExecutionException e) {
+                    System.out.println("Error extracting page: " + e.getCause());
+                    continue;
+                }
+                bytes += page.bytes;
+                if (page.rule == null) {
+                    unmatched.add(page.path.toString());
+                    continue;
+                }
+                if (page.plans.isEmpty() && warnings++ < MAX_WARNINGS) {
+                    System.out.println("Warning: rule " + page.rule.getName() + " found no plans in " + page.path);
+                }
+                for (String[] plan : page.plans) {
+                    if (!seen.add(plan[0] + "|" + plan[1] + "|" + plan[2] + "|" + plan[4])) {
+                        duplicates++;
+                        continue;
+                    }
+                    plans++;
+                    perProvider.merge(plan[0], 1, Integer::sum);
+                    for (String field : plan) {
+                        writer.write(csv(field));
+                        writer.write(',');
+                    }
+                    writer.write(csv(page.url) + "," + csv(page.path.toString()) + "\n");
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        if (!unmatched.isEmpty()) {
+            System.out.println("No rule matches " + unmatched.size() + " pages, e.g. " + unmatched.get(0));
+        }
+        for (Map.Entry<String, Integer> provider : perProvider.entrySet()) {
+            System.out.println("  " + provider.getKey() + ": " + provider.getValue() + " plans");
+        }
+        System.out.printf("Wrote %d plans (%d duplicates skipped) to %s%n", plans, duplicates, output);
+        System.out.printf("%d pages, %.1f MB in %.2f s: %.0f files/s, %.1f MB/s%n", pages.size(), bytes / 1e6,
+                seconds, pages.size() / seconds, bytes / 1e6 / seconds);
+    }
+
+    private static PageResult extract(Path page, Path dir, List<SnapshotRule> rules) throws IOException {
+        byte[] bytes = Files.readAllBytes(page);
+        HtmlText text = HtmlText.parse(new String(bytes, StandardCharsets.UTF_8));
+        SnapshotRule rule = SnapshotRule.forPage(rules, page.getFileName().toString(), text.getTitle());
+        List<String[]> plans = rule == null ? Collections.emptyList() : rule.extract(text.getLines());
+        return new PageResult(dir.relativize(page), bytes.length, rule, text.getCanonicalUrl(), plans);
+    }
+
+    // .html and .htm files under dir, sorted, skipping hidden directories and node_modules
+    private static List<Path> findPages(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            return paths.filter(path -> {
+                String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+                return (name.endsWith(".html") || name.endsWith(".htm")) && Files.isRegularFile(path)
+                        && !skipped(dir.relativize(path));
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static boolean skipped(Path relative) {
+        for (int i = 0; i < relative.getNameCount() - 1; i++) {
+            String part = relative.getName(i).toString();
+            if (part.startsWith(".") || part.equals("node_modules")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0) {
+            return value;
+        }
+        // Line breaks become spaces, so a record never spans lines
+        String flat = value.replace("\r\n", " ").replace('\r', ' ').replace('\n', ' ');
+        return "\"" + flat.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,297 @@
+import java.util.*;
+
+// Column store for plans. Rows arrive in segments, one per parsed file (or chunk of a file),
+// which are filled as the CSV is read and frozen once added to the store; row ids run across
+// the segments in the order they were added. String fields are dictionary-encoded while their
+// values repeat (provider, category, "Unlimited"...) and kept as plain strings once a column
+// turns out to be near-unique (plan names, per-plan URLs), where a dictionary only adds a hash
+// entry per row. Price is a primitive column. InternetPlan objects are only created when a row
+// is read back.
+public class PlanStore {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NO_PRICE = -1;
+
+    // Rows a column sees before it decides whether its dictionary pays off
+    private static final int SAMPLE_ROWS = 1024;
+
+    // One string column: code per row plus code -> value, or the values themselves once more
+    // than 3 in 4 rows hold a value of their own
+    private static class StringColumn {
+        private Map<String, Integer> codes = new HashMap<>();
+        private List<String> values = new ArrayList<>();
+        private String[] frozenValues;
+        private int[] coded = new int[INITIAL_CAPACITY];
+        private String[] plain;
+        private int size;
+
+        void add(String value) {
+            String key = value == null ? "" : value;
+            if (plain != null) {
+                if (size == plain.length) {
+                    plain = Arrays.copyOf(plain, size * 2);
+                }
+                plain[size++] = key;
+                return;
+            }
+            if (size == coded.length) {
+                coded = Arrays.copyOf(coded, size * 2);
+                if (size >= SAMPLE_ROWS && nearUnique()) {
+                    toPlain(size * 2);
+                    add(key);
+                    return;
+                }
+            }
+            Integer code = codes.get(key);
+            if (code == null) {
+                code = values.size();
+                codes.put(key, code);
+                values.add(key);
+            }
+            coded[size++] = code;
+        }
+
+        String get(int row) {
+            if (plain != null) {
+                return plain[row];
+            }
+            return frozenValues != null ? frozenValues[coded[row]] : values.get(coded[row]);
+        }
+
+        int distinctValues() {
+            return plain != null ? -1 : frozenValues != null ? frozenValues.length : values.size();
+        }
+
+        // Drops the build-time hash map and spare capacity; the column is read-only afterwards
+        void freeze() {
+            if (plain != null) {
+                plain = Arrays.copyOf(plain, size);
+                return;
+            }
+            if (size > 0 && nearUnique()) {
+                toPlain(size);
+                return;
+            }
+            coded = Arrays.copyOf(coded, size);
+            frozenValues = values.toArray(new String[0]);
+            codes = null;
+            values = null;
+        }
+
+        private boolean nearUnique() {
+            return values.size() * 4L > size * 3L;
+        }
+
+        private void toPlain(int capacity) {
+            plain = new String[capacity];
+            for (int row = 0; row < size; row++) {
+                plain[row] = values.get(coded[row]);
+            }
+            coded = null;
+            codes = null;
+            values = null;
+        }
+    }
+
+    // Rows appended by one parser. Not thread-safe while being filled; frozen when added to
+    // a store, after which it is immutable and can be shared by several stores
+    public static class Segment {
+        private final StringColumn providers = new StringColumn();
+        private final StringColumn planNames = new StringColumn();
+        private final StringColumn speeds = new StringColumn();
+        private final StringColumn dataAmounts = new StringColumn();
+        private final StringColumn features = new StringColumn();
+        private final StringColumn categories = new StringColumn();
+        private final StringColumn urls = new StringColumn();
+        private int[] price = new int[INITIAL_CAPACITY];
+        private int size;
+        private boolean frozen;
+
+        public void add(SearchEngine.InternetPlan plan) {
+            if (frozen) {
+                throw new IllegalStateException("Segment already added to a PlanStore");
+            }
+            if (size == price.length) {
+                price = Arrays.copyOf(price, size * 2);
+            }
+            price[size++] = parsePrice(plan.price);
+            providers.add(plan.provider);
+            planNames.add(plan.planName);
+            speeds.add(plan.speed);
+            dataAmounts.add(plan.data);
+            features.add(plan.features);
+            categories.add(plan.category);
+            urls.add(plan.url);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        private synchronized void freeze() {
+            if (frozen) {
+                return;
+            }
+            frozen = true;
+            price = Arrays.copyOf(price, size);
+            providers.freeze();
+            planNames.freeze();
+            speeds.freeze();
+            dataAmounts.freeze();
+            features.freeze();
+            categories.freeze();
+            urls.freeze();
+        }
+
+        private SearchEngine.InternetPlan get(int row) {
+            return new SearchEngine.InternetPlan(providers.get(row), planNames.get(row), formatPrice(price[row]),
+                    speeds.get(row), dataAmounts.get(row), features.get(row), categories.get(row), urls.get(row));
+        }
+
+        private void appendJson(StringBuilder json, int row) {
+            json.append("{\"provider\":\"");
+            appendEscaped(json, providers.get(row));
+            json.append("\",\"planName\":\"");
+            appendEscaped(json, planNames.get(row));
+            json.append("\",\"price\":\"").append(formatPrice(price[row]));
+            json.append("\",\"speed\":\"");
+            appendEscaped(json, speeds.get(row));
+            json.append("\",\"data\":\"");
+            appendEscaped(json, dataAmounts.get(row));
+            json.append("\",\"features\":\"");
+            appendEscaped(json, features.get(row));
+            json.append("\",\"category\":\"");
+            appendEscaped(json, categories.get(row));
+            json.append("\",\"url\":\"");
+            appendEscaped(json, urls.get(row));
+            json.append("\"}");
+        }
+
+        // Distinct values held in dictionaries; plain columns count a value per row
+        private int distinctValues() {
+            int total = 0;
+            for (StringColumn column : new StringColumn[] { providers, planNames, speeds, dataAmounts, features,
+                    categories, urls }) {
+                int distinct = column.distinctValues();
+                total += distinct < 0 ? size : distinct;
+            }
+            return total;
+        }
+    }
+
+    private final List<Segment> segments = new ArrayList<>();
+    // Row id of each segment's first row
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int size;
+
+    // Appends a filled segment's rows after the current ones
+    public synchronized void add(Segment segment) {
+        segment.freeze();
+        if (segment.size() == 0) {
+            return;
+        }
+        if (segments.size() == starts.length) {
+            starts = Arrays.copyOf(starts, starts.length * 2);
+        }
+        starts[segments.size()] = size;
+        segments.add(segment);
+        size += segment.size();
+    }
+
+    public synchronized void addAll(List<Segment> segments) {
+        for (Segment segment : segments) {
+            add(segment);
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Monthly price in whole dollars, or -1 when the row had none
+    public synchronized int getPrice(int row) {
+        checkRow(row);
+        int segment = segmentOf(row);
+        return segments.get(segment).price[row - starts[segment]];
+    }
+
+    // Materialises a view of one row
+    public synchronized SearchEngine.InternetPlan get(int row) {
+        checkRow(row);
+        int segment = segmentOf(row);
+        return segments.get(segment).get(row - starts[segment]);
+    }
+
+    // Writes every row as a JSON array straight from the columns, without building plans
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder(size * 256 + 2);
+        json.append('[');
+        boolean first = true;
+        for (Segment segment : segments) {
+            for (int row = 0; row < segment.size(); row++) {
+                if (!first)
+                    json.append(',');
+                first = false;
+                segment.appendJson(json, row);
+            }
+        }
+        json.append(']');
+        return json.toString();
+    }
+
+    public synchronized int distinctValues() {
+        int total = 0;
+        for (Segment segment : segments) {
+            total += segment.distinctValues();
+        }
+        return total;
+    }
+
+    private int segmentOf(int row) {
+        int found = Arrays.binarySearch(starts, 0, segments.size(), row);
+        // Segments are never empty, so a row between two starts belongs to the earlier one
+        return found >= 0 ? found : -found - 2;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Plan row " + row + " out of range, size " + size);
+        }
+    }
+
+    // Prices come out of SearchEngine.extractPrice as "$XX" or "N/A"
+    private static int parsePrice(String text) {
+        if (text == null || text.length() < 2 || text.charAt(0) != '$' || text.length() > 10) {
+            return NO_PRICE;
+        }
+        int value = 0;
+        for (int i = 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return NO_PRICE;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static String formatPrice(int value) {
+        return value == NO_PRICE ? "N/A" : "$" + value;
+    }
+
+    // Same escaping as InternetPlan.toJson
+    private static void appendEscaped(StringBuilder json, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                json.append("\\\\");
+            } else if (c == '"') {
+                json.append("\\\"");
+            } else if (c == '\n') {
+                json.append(' ');
+            } else if (c != '\r') {
+                json.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.*;
+
+// Compares retained heap per plan for a List<InternetPlan> against PlanStore on a synthetic
+// scraped catalogue whose repetition follows the shipped provider CSVs. Run with a fixed
+// heap, e.g. -Xmx2g.
+// Usage: java PlanStoreBenchmark [plans]
+public class PlanStoreBenchmark {
+
+    private static final String[] PROVIDERS = { "Bell", "Rogers", "Virgin Plus", "AT&T", "Koodo", "Fido",
+            "Freedom Mobile" };
+    private static final String[] SPEEDS = { "50 Mbps", "100 Mbps", "300 Mbps", "500 Mbps", "1 Gbps", "1.5 Gbps",
+            "3 Gbps", "4G/5G" };
+    private static final String[] DATA = { "Unlimited", "2 GB", "6 GB", "12 GB", "20 GB", "50 GB" };
+    private static final String[] FEATURES = { "Unlimited usage", "Mobile Plan", "High-speed internet",
+            "Canada-wide calling", "Canada-wide calling + US roaming", "5G network" };
+    private static final String[] CATEGORIES = { "Home Internet", "Mobile", "Internet" };
+
+    // Rows per segment, as if the catalogue came from files (or file chunks) of this size
+    private static final int SEGMENT_ROWS = 10000;
+
+    public static void main(String[] args) {
+        int plans = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+
+        // Store first: one-off JDK allocations made on first use land in its number,
+        // which understates the saving rather than overstating it
+        long storeBytes = measureStore(plans);
+        long listBytes = measureList(plans);
+
+        System.out.printf("%-22s %-14s %-14s%n", "layout", "heap(MB)", "bytes/plan");
+        System.out.printf("%-22s %-14.1f %-14.1f%n", "ArrayList<InternetPlan>", listBytes / 1048576.0,
+                (double) listBytes / plans);
+        System.out.printf("%-22s %-14.1f %-14.1f%n", "PlanStore", storeBytes / 1048576.0,
+                (double) storeBytes / plans);
+    }
+
+    private static long measureList(int plans) {
+        long baseline = usedHeap();
+        List<SearchEngine.InternetPlan> list = new ArrayList<>();
+        for (int i = 0; i < plans; i++) {
+            list.add(syntheticPlan(i));
+        }
+        long bytes = usedHeap() - baseline;
+        Reference.reachabilityFence(list);
+        return bytes;
+    }
+
+    private static long measureStore(int plans) {
+        long baseline = usedHeap();
+        PlanStore store = new PlanStore();
+        PlanStore.Segment segment = new PlanStore.Segment();
+        for (int i = 0; i < plans; i++) {
+            segment.add(syntheticPlan(i));
+            if (segment.size() == SEGMENT_ROWS) {
+                store.add(segment);
+                segment = new PlanStore.Segment();
+            }
+        }
+        store.add(segment);
+        long bytes = usedHeap() - baseline;
+        System.out.println("PlanStore holds " + store.distinctValues() + " distinct string values");
+        Reference.reachabilityFence(store);
+        return bytes;
+    }
+
+    // Every field is a fresh String, as it is when read from a CSV row. In the shipped CSVs
+    // about half the rows repeat another row's plan name (the same plan at another price or
+    // on another page) and features are free text, one per few rows; a crawled catalogue
+    // records each offer's own page, so URLs are all but unique.
+    private static SearchEngine.InternetPlan syntheticPlan(int i) {
+        String provider = PROVIDERS[i % PROVIDERS.length];
+        String speed = SPEEDS[(i / 7) % SPEEDS.length];
+        String data = DATA[(i / 3) % DATA.length];
+        int plan = i / 2;
+        return new SearchEngine.InternetPlan(new String(provider),
+                provider + " " + data + " Plan " + plan,
+                "$" + (30 + i % 150),
+                new String(speed),
+                new String(data),
+                FEATURES[(i / 4) % FEATURES.length] + ", offer " + (i / 4),
+                new String(CATEGORIES[i % CATEGORIES.length]),
+                "https://www." + provider.toLowerCase().replace(" ", "") + ".ca/plans/" + plan + "?offer=" + i);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
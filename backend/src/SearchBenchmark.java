@@ -0,0 +1,78 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+// Measures ingest time and query latency of the sharded SearchEngine on a synthetic corpus.
+// Usage: java SearchBenchmark [documents] [wordsPerDocument] [queries] [maxShards]
+public class SearchBenchmark {
+
+    private static final int VOCABULARY_SIZE = 5000;
+
+    public static void main(String[] args) {
+        int documents = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int wordsPerDoc = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxShards = args.length > 3 ? Integer.parseInt(args[3]) : cores;
+
+        String[] vocabulary = buildVocabulary();
+
+        System.out.printf("Corpus: %d documents x %d words, %d cores%n", documents, wordsPerDoc, cores);
+        System.out.printf("%-8s %-12s %-12s %-12s %-12s%n", "shards", "ingest(ms)", "avg(ms)", "p50(ms)", "p99(ms)");
+
+        for (int shards = 1; shards <= Math.max(maxShards, 1); shards *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(shards);
+            SearchEngine engine = new SearchEngine(shards, pool);
+
+            long start = System.nanoTime();
+            ingest(engine, pool, vocabulary, documents, wordsPerDoc);
+            long ingestMs = (System.nanoTime() - start) / 1_000_000;
+
+            // The most frequent terms have the longest posting lists
+            Random random = new Random(7);
+            for (int i = 0; i < 20; i++) {
+                engine.searchTopK(vocabulary[random.nextInt(10)], 10);
+            }
+
+            long[] latencies = new long[queries];
+            for (int i = 0; i < queries; i++) {
+                String term = vocabulary[random.nextInt(10)];
+                long t = System.nanoTime();
+                engine.searchTopK(term, 10);
+                latencies[i] = System.nanoTime() - t;
+            }
+            Arrays.sort(latencies);
+            double avg = Arrays.stream(latencies).average().orElse(0) / 1e6;
+
+            System.out.printf("%-8d %-12d %-12.3f %-12.3f %-12.3f%n", shards, ingestMs, avg,
+                    latencies[queries / 2] / 1e6, latencies[Math.min(queries - 1, queries * 99 / 100)] / 1e6);
+            pool.shutdown();
+        }
+    }
+
+    private static void ingest(SearchEngine engine, ForkJoinPool pool, String[] vocabulary, int documents,
+            int wordsPerDoc) {
+        pool.submit(() -> java.util.stream.IntStream.range(0, documents).parallel().forEach(doc -> {
+            // Seeding by document id keeps the corpus identical for every shard count
+            Random random = new Random(doc);
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < wordsPerDoc; w++) {
+                text.append(vocabulary[zipf(random)]).append(' ');
+            }
+            engine.indexDocument("doc_" + doc + ".csv", text.toString());
+        })).join();
+    }
+
+    // Skewed towards low ranks so a few terms appear in most documents
+    private static int zipf(Random random) {
+        double u = random.nextDouble();
+        return (int) Math.min(VOCABULARY_SIZE - 1, Math.floor(Math.pow(VOCABULARY_SIZE, u)) - 1);
+    }
+
+    private static String[] buildVocabulary() {
+        String[] words = new String[VOCABULARY_SIZE];
+        for (int i = 0; i < VOCABULARY_SIZE; i++) {
+            words[i] = "term" + Integer.toString(i, 36);
+        }
+        return words;
+    }
+}
@@ -1,16 +1,92 @@
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SearchEngine {
 
-    // Inverted Index: Word -> List of (File, Count)
-    private Map<String, Map<String, Integer>> invertedIndex = new HashMap<>();
+    // Result ordering shared by the shards and the merge step: documents containing the query
+    // itself first, then score (occurrences weighted down per edit for typo neighbours) desc.
+    // Most hits tie on score, and an unbounded search sorts all of them, so ties are broken by
+    // the name's hash (copied into the hit, next to the score) before the name itself: any
+    // fixed order keeps shard merges deterministic, and comparing names made the sort several
+    // times slower.
+    static final Comparator<SearchHit> RESULT_ORDER = (a, b) -> {
+        if (a.exact != b.exact) {
+            return a.exact ? -1 : 1;
+        }
+        int byScore = Double.compare(b.score, a.score);
+        if (byScore != 0) {
+            return byScore;
+        }
+        int byHash = Integer.compare(a.keyHash, b.keyHash);
+        return byHash != 0 ? byHash : a.docKey.compareTo(b.docKey);
+    };
 
-    // Search History: Word -> Count
-    private Map<String, Integer> searchHistory = new HashMap<>();
+    // Each edit between the query and a matched term halves that term's weight
+    private static final double FUZZY_PENALTY = 0.5;
+
+    // Inverted Index split into shards by document hash: each shard holds
+    // Word -> (File, Count) for the documents routed to it
+    private final IndexShard[] shards;
+
+    // Pool used to build shards at ingest and to fan queries out across them
+    private final ForkJoinPool pool;
 
-    // Structured Plans Data
-    private List<InternetPlan> allPlans = new ArrayList<>();
+    // Sorted union of every shard's terms, built on the first fuzzy query. Terms indexed
+    // after that wait in pendingTerms and are merged in by the next query that needs the
+    // dictionary, which costs O(V + p log p) instead of collecting and sorting all V again.
+    private volatile String[] termDictionary;
+    private final Set<String> pendingTerms = ConcurrentHashMap.newKeySet();
+
+    // Bumped whenever documents are indexed, so readers can tell the index changed
+    private final AtomicLong indexVersion = new AtomicLong();
+
+    // Search History: Word -> Count
+    private final Map<String, Integer> searchHistory;
+
+    // Durable copy of the search history, written off the request path
+    private volatile SearchHistoryLog historyLog;
+
+    // Recent query counts for the trending endpoint
+    private final TrendingQueries trending;
+
+    // Structured Plans Data, stored column-wise and addressed by row id
+    private final PlanStore planStore = new PlanStore();
+
+    // Per-provider column mappings, see csv_schemas.properties
+    private List<CsvSchema> schemas = Collections.emptyList();
+    // Size and modification time of the schema file they were read from
+    private String schemasStamp = "";
+
+    // Row accounting for each indexed file
+    private final Map<String, LoadReport> loadReports = new ConcurrentHashMap<>();
+
+    // What each data file contributed, by path. The next generation takes these over for the
+    // files that have not changed since, so a reload only parses the files that did.
+    private final Map<String, FileIndex> fileIndexes = new ConcurrentHashMap<>();
+    private Map<String, FileIndex> previousFileIndexes = Collections.emptyMap();
+    // Files that could not be read properly this time, served from before: name -> why
+    private final Map<String, String> keptFiles = new ConcurrentHashMap<>();
+    // Files whose plans differ from the previous generation's
+    private final AtomicInteger changedFiles = new AtomicInteger();
+    private boolean samePlansAsPrevious;
+
+    public static class SearchHit {
+        public final String docKey;
+        // Occurrences of every matched term, typo neighbours included
+        public int count;
+        public double score;
+        // True when the document contains the query term itself
+        public boolean exact;
+        final int keyHash;
+
+        public SearchHit(String docKey) {
+            this.docKey = docKey;
+            this.keyHash = docKey.hashCode();
+        }
+    }
 
     public static class InternetPlan {
         public String provider;
@@ -49,197 +125,409 @@ public class SearchEngine {
         }
     }
 
+    public SearchEngine() {
+        this(Runtime.getRuntime().availableProcessors(), ForkJoinPool.commonPool());
+    }
+
+    public SearchEngine(int shardCount, ForkJoinPool pool) {
+        this(shardCount, pool, new HashMap<>(), new TrendingQueries());
+    }
+
+    private SearchEngine(int shardCount, ForkJoinPool pool, Map<String, Integer> searchHistory,
+            TrendingQueries trending) {
+        this.shards = new IndexShard[Math.max(1, shardCount)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new IndexShard();
+        }
+        this.pool = pool;
+        this.searchHistory = searchHistory;
+        this.trending = trending;
+    }
+
+    // An empty engine with the same shards and pool for a rebuilt index. It shares this
+    // engine's search history, history log and trending counts, so swapping it in does not
+    // reset them, and takes over this engine's plans and word counts for the files that have
+    // not changed by the time it indexes them. Call after attachHistoryLog.
+    public SearchEngine nextGeneration() {
+        SearchEngine next = new SearchEngine(shards.length, pool, searchHistory, trending);
+        next.historyLog = historyLog;
+        next.previousFileIndexes = fileIndexes;
+        return next;
+    }
+
     public void indexFile(File file) {
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String line;
-            String fileName = file.getName();
-            String provider = getProviderFromFileName(fileName);
-            boolean isHeader = true;
-
-            while ((line = br.readLine()) != null) {
-                if (isHeader) {
-                    isHeader = false;
-                    continue; // Skip header row
-                }
+        planStore.addAll(indexFileOrReuse(file));
+    }
+
+    // Parses and indexes the files in parallel, then appends their plans in the
+    // order the files were given so /api/plans stays stable between runs
+    public void indexFiles(List<File> files) {
+        indexFiles(files, pool);
+    }
 
-                if (line.trim().isEmpty())
-                    continue;
+    // As above on another pool, so a background rebuild does not compete with the
+    // queries that fan out on this engine's pool
+    public void indexFiles(List<File> files, ForkJoinPool ingestPool) {
+        List<ForkJoinTask<List<PlanStore.Segment>>> tasks = new ArrayList<>();
+        for (File file : files) {
+            tasks.add(ingestPool.submit(() -> indexFileOrReuse(file)));
+        }
+        for (ForkJoinTask<List<PlanStore.Segment>> task : tasks) {
+            planStore.addAll(task.join());
+        }
+        samePlansAsPrevious = changedFiles.get() == 0 && fileIndexes.keySet().equals(previousFileIndexes.keySet());
+        // Let go of the previous copies of changed files
+        previousFileIndexes = Collections.emptyMap();
+    }
 
-                // Parse and store structured plan
-                InternetPlan plan = parsePlanFromCSV(line, provider, fileName);
-                if (plan != null && !plan.price.equals("N/A")) {
-                    allPlans.add(plan);
+    // Indexes free text under the given document key
+    public void indexDocument(String docKey, String text) {
+        indexDocument(docKey, text, null);
+    }
 
-                    // Index words from plan for search
-                    indexWords(plan.planName, fileName);
-                    indexWords(plan.provider, fileName);
-                    indexWords(plan.features, fileName);
-                    indexWords(plan.category, fileName);
+    // As above, also adding to newTerms the words that were not in the index before
+    public void indexDocument(String docKey, String text, Collection<String> newTerms) {
+        Map<String, Integer> counts = new HashMap<>();
+        countWords(text, counts);
+        if (newTerms != null) {
+            for (String word : counts.keySet()) {
+                if (!containsTerm(word)) {
+                    newTerms.add(word);
                 }
             }
-        } catch (IOException e) {
-            System.out.println("Error indexing file: " + file.getName());
         }
+        flushCounts(docKey, counts);
     }
 
-    private void indexWords(String text, String fileName) {
-        if (text == null || text.trim().isEmpty()) {
-            return;
+    private boolean containsTerm(String word) {
+        for (IndexShard shard : shards) {
+            if (shard.containsTerm(word)) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        // Split text into words and index each one
-        String[] words = text.toLowerCase().split("\\s+");
-        for (String word : words) {
-            // Clean the word (remove special characters, keep only alphanumeric)
-            word = word.replaceAll("[^a-z0-9]", "").trim();
+    public void loadSchemas(File config) {
+        try {
+            schemasStamp = config.length() + "@" + config.lastModified();
+            schemas = CsvSchema.loadAll(config);
+        } catch (IOException | IllegalArgumentException e) {
+            schemasStamp = "";
+            System.out.println("Error loading CSV schemas from " + config.getName() + ": " + e.getMessage());
+        }
+    }
 
-            if (word.isEmpty() || word.length() < 2) {
-                continue; // Skip empty or single-character words
-            }
+    // Plans and word counts from one data file, as of its size and modification time.
+    // Segments are frozen once in a PlanStore, so generations can share them.
+    private static class FileIndex {
+        final String stamp;
+        final List<PlanStore.Segment> segments;
+        final Map<String, Integer> counts;
+        final LoadReport report;
+        // Why the file could not be read in full, or null
+        final String failure;
+
+        FileIndex(String stamp, List<PlanStore.Segment> segments, Map<String, Integer> counts, LoadReport report,
+                String failure) {
+            this.stamp = stamp;
+            this.segments = segments;
+            this.counts = counts;
+            this.report = report;
+            this.failure = failure;
+        }
+    }
 
-            // Add to inverted index
-            invertedIndex.putIfAbsent(word, new HashMap<>());
-            Map<String, Integer> fileMap = invertedIndex.get(word);
-            fileMap.put(fileName, fileMap.getOrDefault(fileName, 0) + 1);
-        }
-    }
-
-    private String getProviderFromFileName(String fileName) {
-        String lower = fileName.toLowerCase();
-        if (lower.contains("bell"))
-            return "Bell";
-        if (lower.contains("rogers"))
-            return "Rogers";
-        if (lower.contains("virgin"))
-            return "Virgin Plus";
-        if (lower.contains("att"))
-            return "AT&T";
-        if (lower.contains("koodo"))
-            return "Koodo";
-        if (lower.contains("fido"))
-            return "Fido";
-        if (lower.contains("freedom"))
-            return "Freedom Mobile";
-        return "Unknown";
-    }
-
-    private InternetPlan parsePlanFromCSV(String line, String provider, String fileName) {
-        String[] parts = line.split(",");
-
-        // Bell format: Plan Type,Plan Name,Price,Speed/Data,Features,Page URL,Scrape
-        // Time
-        if (fileName.contains("bell")) {
-            if (parts.length >= 4) {
-                String planName = parts.length > 1 ? parts[1].trim() : "Internet Plan";
-                String price = parts.length > 2 ? extractPrice(parts[2]) : "N/A";
-                String speed = parts.length > 3 ? parts[3].trim() : "N/A";
-                String data = "Unlimited";
-                String features = parts.length > 4 ? parts[4].trim() : "";
-                String category = parts.length > 0 ? parts[0].trim() : "Internet";
-                String url = parts.length > 5 ? parts[5].trim() : "";
-                return new InternetPlan(provider, planName, price, speed, data, features, category, url);
+    // Indexes a file from the previous generation's copy when neither it nor the schemas
+    // changed, and parses it otherwise. When the parse fails for a reason that should pass
+    // (a read error, no schema for the file after a bad edit of csv_schemas.properties, the
+    // file changing while it was read) the previous copy is served instead, and the file is
+    // parsed again on the next reload. A file that parses cleanly is taken as it is, even
+    // with no rows, so emptying a file drops its plans.
+    private List<PlanStore.Segment> indexFileOrReuse(File file) {
+        String path = file.getAbsolutePath();
+        String stamp = fileStamp(file) + "/" + schemasStamp;
+        FileIndex previous = previousFileIndexes.get(path);
+        FileIndex index;
+        if (previous != null && previous.stamp.equals(stamp)) {
+            index = previous;
+        } else {
+            index = parseAndIndex(file, stamp);
+            if (index.failure != null && previous != null) {
+                System.out.println("Warning: " + file.getName() + " " + index.failure + ", keeping its previous "
+                        + previous.report.plans + " plans");
+                keptFiles.put(file.getName(), index.failure);
+                index = previous;
             }
         }
+        if (index != previous) {
+            changedFiles.incrementAndGet();
+        }
+        fileIndexes.put(path, index);
+        loadReports.put(file.getName(), index.report);
+        // Word counts for this file go to its shard in one flush
+        flushCounts(file.getName(), index.counts);
+        return index.segments;
+    }
 
-        // AT&T format: Plan Name,Price,Speed,Connection Type,Data Cap,Features,Region
-        if (fileName.contains("att")) {
-            if (parts.length >= 3) {
-                String planName = parts.length > 0 ? parts[0].trim() : "Internet Plan";
-                String price = parts.length > 1 ? extractPrice(parts[1]) : "N/A";
-                String speed = parts.length > 2 ? parts[2].trim() : "N/A";
-                String data = parts.length > 4 ? parts[4].trim() : "Unlimited";
-                String features = parts.length > 5 ? parts[5].trim() : "";
-                String url = parts.length > 7 ? parts[7].trim() : "";
-                return new InternetPlan(provider, planName, price, speed, data, features, "Home Internet", url);
-            }
+    // Plans go into column segments as rows are parsed, one segment per chunk of the file
+    private FileIndex parseAndIndex(File file, String stamp) {
+        String fileName = file.getName();
+        CsvSchema schema = CsvSchema.forFile(schemas, fileName);
+        if (schema == null) {
+            System.out.println("Warning: No CSV schema matches " + fileName);
+            return new FileIndex(stamp, Collections.emptyList(), Collections.emptyMap(), new LoadReport(),
+                    "has no CSV schema");
         }
 
-        // Rogers format: Provider,,Price,DownloadSpeed,,URL
-        if (fileName.contains("rogers")) {
-            if (parts.length >= 3) {
-                String price = parts.length > 2 ? extractPrice(parts[2]) : "N/A";
-                String speed = parts.length > 3 ? parts[3].trim() : "N/A";
-                String planName = "Rogers Internet " + speed;
-                String url = parts.length > 5 ? parts[5].trim() : "";
-                return new InternetPlan(provider, planName, price, speed, "Unlimited", "High-speed internet",
-                        "Home Internet", url);
+        String failure = null;
+        List<PlanRowHandler> chunks = Collections.emptyList();
+        try {
+            // Chunks after the first are handed the header so they can skip repeats of it
+            String[] header = file.length() >= CsvParser.PARALLEL_THRESHOLD ? CsvParser.firstRecord(file) : null;
+            chunks = CsvParser.parseFile(file, pool,
+                    firstLine -> new PlanRowHandler(schema, firstLine == 1 ? null : header));
+        } catch (IOException e) {
+            System.out.println("Error indexing file: " + fileName);
+            failure = "could not be read (" + e.getMessage() + ")";
+        }
+        if (failure == null && !stamp.startsWith(fileStamp(file) + "/")) {
+            failure = "changed while being read";
+        }
+
+        // A chunk that starts inside the other side of a conflict block only finds out from
+        // the chunks before it, so its rows up to its first marker are kept apart until now
+        List<PlanStore.Segment> segments = new ArrayList<>();
+        Map<String, Integer> counts = new HashMap<>();
+        LoadReport report = new LoadReport();
+        boolean inTheirs = false;
+        for (PlanRowHandler chunk : chunks) {
+            if (inTheirs) {
+                report.conflictLines += chunk.leading.records;
+            } else {
+                chunk.leading.addTo(segments, counts, report);
+            }
+            chunk.trailing.addTo(segments, counts, report);
+            report.rows += chunk.report.rows;
+            report.malformed += chunk.report.malformed;
+            report.conflictLines += chunk.report.conflictLines;
+            if (chunk.sawMarker) {
+                inTheirs = chunk.inTheirs;
             }
         }
 
-        // Virgin format: Category,Plan_Name,Monthly_Price,Data_Speed,Raw_Content
-        if (fileName.contains("virgin")) {
-            if (parts.length >= 4) {
-                String category = parts.length > 0 ? parts[0].replace("\"", "").trim() : "Internet";
-                String planName = parts.length > 1 ? parts[1].replace("\"", "").trim() : "Internet Plan";
-                String price = parts.length > 2 ? extractPrice(parts[2]) : "N/A";
-                String speed = parts.length > 3 ? parts[3].replace("\"", "").trim() : "N/A";
-                String url = parts.length > 4 ? parts[4].trim() : "";
-                return new InternetPlan(provider, planName, price, speed, "Unlimited", "Unlimited data", category, url);
+        System.out.println("Indexed " + fileName + ": " + report);
+        return new FileIndex(stamp, segments, counts, report, failure);
+    }
+
+    // Size and modification time, which tell whether a file changed since it was last read
+    private static String fileStamp(File file) {
+        return file.length() + "@" + file.lastModified();
+    }
+
+    public static class LoadReport {
+        public int rows;
+        public int plans;
+        public int malformed;
+        public int conflictLines;
+
+        @Override
+        public String toString() {
+            return rows + " rows, " + plans + " plans, " + malformed + " malformed, " + conflictLines
+                    + " conflict lines skipped";
+        }
+    }
+
+    // Plans and word counts from part of a file
+    private static class ParsedRows {
+        final PlanStore.Segment plans = new PlanStore.Segment();
+        final Map<String, Integer> counts = new HashMap<>();
+        final LoadReport report = new LoadReport();
+        int records;
+
+        void addTo(List<PlanStore.Segment> segments, Map<String, Integer> fileCounts, LoadReport fileReport) {
+            segments.add(plans);
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                fileCounts.merge(entry.getKey(), entry.getValue(), Integer::sum);
             }
+            fileReport.rows += report.rows;
+            fileReport.plans += report.plans;
+            fileReport.malformed += report.malformed;
         }
+    }
 
-        // Koodo format: Plan Name,Price,Data,Features
-        if (fileName.contains("koodo")) {
-            if (parts.length >= 3) {
-                String planName = parts.length > 0 ? parts[0].trim() : "Koodo Plan";
-                String price = parts.length > 1 ? extractPrice(parts[1]) : "N/A";
-                String data = parts.length > 2 ? parts[2].trim() : "N/A";
-                String features = parts.length > 3 ? parts[3].trim() : "";
+    // Turns parsed CSV rows into plans. Left-over git conflict blocks keep the HEAD side:
+    // marker lines and the other side are skipped and counted rather than read as plans.
+    // Rows before the first marker go to leading, since a chunk cannot tell on its own
+    // whether it starts inside the other side; the rest go to trailing.
+    private static class PlanRowHandler implements CsvParser.RecordHandler {
+        private final CsvSchema schema;
+        private final ParsedRows leading = new ParsedRows();
+        private final ParsedRows trailing = new ParsedRows();
+        // Malformed rows and conflict lines seen after the first marker
+        private final LoadReport report = new LoadReport();
+        private String[] header;
+        private boolean sawMarker;
+        private boolean inTheirs;
+
+        // header is null for a handler that starts at the top of the file, which reads it
+        PlanRowHandler(CsvSchema schema, String[] header) {
+            this.schema = schema;
+            this.header = header;
+        }
 
-                // Determine if it's internet or mobile based on plan name or data
-                String category = planName.toLowerCase().contains("internet") ||
-                        data.toLowerCase().contains("mbps") ||
-                        data.toLowerCase().contains("gbps") ? "Home Internet" : "Mobile";
-                String speed = category.equals("Home Internet") ? data : "4G/5G";
-                String dataAmount = category.equals("Home Internet") ? "Unlimited" : data;
+        @Override
+        public void record(String[] fields, long line) {
+            String first = fields[0];
+            if (fields.length == 1 && isConflictMarker(first)) {
+                sawMarker = true;
+                inTheirs = first.startsWith("=======");
+                report.conflictLines++;
+                return;
+            }
+            if (inTheirs) {
+                report.conflictLines++;
+                return;
+            }
+            ParsedRows rows = sawMarker ? trailing : leading;
+            rows.records++;
+            if (header == null) {
+                header = fields;
+                return;
+            }
+            if (Arrays.equals(header, fields)) {
+                return; // header repeated further down the file
+            }
 
-                return new InternetPlan(provider, planName, price, speed, dataAmount, features, category, "");
+            rows.report.rows++;
+            InternetPlan plan = schema.map(fields);
+            if (plan == null) {
+                rows.report.malformed++;
+                return;
+            }
+            if (plan.price.equals("N/A")) {
+                return;
             }
+            rows.plans.add(plan);
+            rows.report.plans++;
+
+            // Index words from plan for search
+            countWords(plan.planName, rows.counts);
+            countWords(plan.provider, rows.counts);
+            countWords(plan.features, rows.counts);
+            countWords(plan.category, rows.counts);
         }
 
-        // Generic format (Fido/Freedom): Provider,Plan Name,Price,Speed,Data
-        if (fileName.contains("fido") || fileName.contains("freedom")) {
-            if (parts.length >= 5) {
-                String planName = parts[1].trim();
-                String price = extractPrice(parts[2]);
-                String speed = parts[3].trim();
-                String data = parts[4].trim();
-                return new InternetPlan(provider, planName, price, speed, data, "Mobile Plan", "Mobile", "");
+        @Override
+        public void malformed(long line, String reason) {
+            report.rows++;
+            report.malformed++;
+        }
+
+        private static boolean isConflictMarker(String field) {
+            return field.startsWith("<<<<<<<") || field.startsWith("=======") || field.startsWith(">>>>>>>");
+        }
+    }
+
+    public Map<String, LoadReport> getLoadReports() {
+        return loadReports;
+    }
+
+    // Files indexed from the previous generation because they could not be read: name -> why
+    public Map<String, String> getKeptFiles() {
+        return keptFiles;
+    }
+
+    // True when indexFiles took every file over from the previous generation, so the plans
+    // are the same rows in the same order
+    public boolean hasSamePlansAsPrevious() {
+        return samePlansAsPrevious;
+    }
+
+    private void flushCounts(String docKey, Map<String, Integer> counts) {
+        IndexShard shard = shardFor(docKey);
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (shard.add(entry.getKey(), docKey, entry.getValue())) {
+                pendingTerms.add(entry.getKey());
             }
         }
+        indexVersion.incrementAndGet();
+    }
 
-        return null;
+    private IndexShard shardFor(String docKey) {
+        return shards[Math.floorMod(docKey.hashCode(), shards.length)];
+    }
+
+    // Splits on whitespace and keeps only [a-z0-9] of each lower-cased word, in one
+    // pass over the characters instead of a split plus a replaceAll per word
+    private static void countWords(String text, Map<String, Integer> counts) {
+        if (text == null) {
+            return;
+        }
+
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? Character.toLowerCase(text.charAt(i)) : ' ';
+            if (Character.isWhitespace(c)) {
+                // Skip empty or single-character words
+                if (word.length() >= 2) {
+                    counts.merge(word.toString(), 1, Integer::sum);
+                }
+                word.setLength(0);
+            } else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                word.append(c);
+            }
+        }
     }
 
-    private String extractPrice(String text) {
-        // Extract price from various formats like "$50/mo", "$50.00 per month", etc.
-        text = text.replaceAll("\"", "").trim();
-        if (text.matches(".*\\$\\d+.*")) {
-            String price = text.replaceAll("[^$0-9.]", "");
-            if (price.startsWith("$")) {
-                return price.split("\\.")[0]; // Return just $XX without cents
+    // Extracts "$XX" from formats like "$50/mo", "$50.00 per month": the dollars of the
+    // first '$' followed by a digit, without cents
+    static String extractPrice(String text) {
+        for (int i = 0; i + 1 < text.length(); i++) {
+            if (text.charAt(i) == '$' && Character.isDigit(text.charAt(i + 1))) {
+                int end = i + 1;
+                while (end < text.length() && Character.isDigit(text.charAt(end))) {
+                    end++;
+                }
+                return text.substring(i, end);
             }
         }
         return "N/A";
     }
 
+    // Every matching document, best first
     public String search(String query) {
+        return search(query, Integer.MAX_VALUE);
+    }
+
+    // The best limit matching documents; each shard keeps only its own top limit
+    public String search(String query, int limit) {
         String lowerQuery = query.toLowerCase().trim();
-        searchHistory.put(lowerQuery, searchHistory.getOrDefault(lowerQuery, 0) + 1);
+        synchronized (searchHistory) {
+            searchHistory.put(lowerQuery, searchHistory.getOrDefault(lowerQuery, 0) + 1);
+        }
+        SearchHistoryLog log = historyLog;
+        if (log != null) {
+            log.record(lowerQuery);
+        }
+        if (!lowerQuery.isEmpty()) {
+            trending.record(lowerQuery);
+        }
 
-        if (!invertedIndex.containsKey(lowerQuery)) {
+        List<SearchHit> sortedResults = searchFuzzy(lowerQuery, limit);
+        if (sortedResults.isEmpty()) {
             return "[]";
         }
 
-        Map<String, Integer> results = invertedIndex.get(lowerQuery);
-        List<Map.Entry<String, Integer>> sortedResults = new ArrayList<>(results.entrySet());
-        sortedResults.sort((a, b) -> b.getValue().compareTo(a.getValue()));
-
-        StringBuilder json = new StringBuilder("[");
+        // Appended by hand: String.format per hit dominated the time for queries that match
+        // a large part of the index
+        StringBuilder json = new StringBuilder(sortedResults.size() * 56).append('[');
         for (int i = 0; i < sortedResults.size(); i++) {
-            Map.Entry<String, Integer> entry = sortedResults.get(i);
-            String fileName = escapeJsonValue(entry.getKey());
-            json.append(String.format("{\"file\": \"%s\", \"count\": %d}", fileName, entry.getValue()));
+            SearchHit hit = sortedResults.get(i);
+            json.append("{\"file\": \"").append(escapeJsonValue(hit.docKey)).append("\", \"count\": ")
+                    .append(hit.count).append(", \"score\": ");
+            appendScore(json, hit.score);
+            json.append(", \"exact\": ").append(hit.exact).append('}');
             if (i < sortedResults.size() - 1)
                 json.append(",");
         }
@@ -247,29 +535,212 @@ public class SearchEngine {
         return json.toString();
     }
 
-    public String getAllPlans() {
-        StringBuilder json = new StringBuilder("[");
-        for (int i = 0; i < allPlans.size(); i++) {
-            json.append(allPlans.get(i).toJson());
-            if (i < allPlans.size() - 1)
-                json.append(",");
+    // The score with two decimals, as %.2f would print it
+    private static void appendScore(StringBuilder json, double score) {
+        long hundredths = Math.round(score * 100);
+        json.append(hundredths / 100).append('.');
+        long fraction = hundredths % 100;
+        if (fraction < 10) {
+            json.append('0');
         }
-        json.append("]");
-        return json.toString();
+        json.append(fraction);
     }
 
-    public String getFrequencyStats() {
+    // Exact and typo-tolerant matches in one pass: a Levenshtein automaton for the
+    // query is intersected with the term dictionary, and every accepted term is
+    // searched with its weight reduced by FUZZY_PENALTY per edit
+    public List<SearchHit> searchFuzzy(String term, int k) {
+        int maxEdits = maxEditsFor(term);
+        if (maxEdits == 0) {
+            return searchTopK(new String[] { term }, new double[] { 1.0 }, k);
+        }
+
+        List<LevenshteinAutomaton.Match> matches = new LevenshteinAutomaton(term, maxEdits)
+                .intersect(getTermDictionary());
+        String[] terms = new String[matches.size()];
+        double[] weights = new double[matches.size()];
+        for (int i = 0; i < matches.size(); i++) {
+            terms[i] = matches.get(i).term;
+            weights[i] = Math.pow(FUZZY_PENALTY, matches.get(i).distance);
+        }
+        return searchTopK(terms, weights, k);
+    }
+
+    // Short words tolerate fewer edits, otherwise every two-letter term matches
+    private static int maxEditsFor(String term) {
+        if (term.length() <= 2)
+            return 0;
+        if (term.length() <= 5)
+            return 1;
+        return 2;
+    }
+
+    private String[] getTermDictionary() {
+        String[] dictionary = termDictionary;
+        if (dictionary != null && pendingTerms.isEmpty()) {
+            return dictionary;
+        }
+        synchronized (this) {
+            dictionary = termDictionary;
+            if (dictionary == null) {
+                // Cleared first: a term added while collecting is either collected or left
+                // pending, and merging skips terms the dictionary already has
+                pendingTerms.clear();
+                Set<String> terms = new HashSet<>();
+                for (IndexShard shard : shards) {
+                    shard.collectTerms(terms);
+                }
+                dictionary = terms.toArray(new String[0]);
+                Arrays.sort(dictionary);
+            } else if (!pendingTerms.isEmpty()) {
+                List<String> added = new ArrayList<>(pendingTerms);
+                pendingTerms.removeAll(added);
+                dictionary = mergeTerms(dictionary, added);
+            }
+            termDictionary = dictionary;
+        }
+        return dictionary;
+    }
+
+    // The sorted union of a sorted dictionary and some terms, which may already be in it
+    // (a word new to one shard can be in another)
+    private static String[] mergeTerms(String[] dictionary, List<String> added) {
+        Collections.sort(added);
+        List<String> fresh = new ArrayList<>(added.size());
+        for (String term : added) {
+            if (Arrays.binarySearch(dictionary, term) < 0
+                    && (fresh.isEmpty() || !fresh.get(fresh.size() - 1).equals(term))) {
+                fresh.add(term);
+            }
+        }
+        if (fresh.isEmpty()) {
+            return dictionary;
+        }
+        String[] merged = new String[dictionary.length + fresh.size()];
+        int i = 0, j = 0, m = 0;
+        while (i < dictionary.length || j < fresh.size()) {
+            if (j >= fresh.size() || (i < dictionary.length && dictionary[i].compareTo(fresh.get(j)) < 0)) {
+                merged[m++] = dictionary[i++];
+            } else {
+                merged[m++] = fresh.get(j++);
+            }
+        }
+        return merged;
+    }
+
+    public List<SearchHit> searchTopK(String term, int k) {
+        return searchTopK(new String[] { term }, new double[] { 1.0 }, k);
+    }
+
+    // Scatter-gather: each shard computes its local top-K, and the partial
+    // results are merged pairwise back up the fork tree into the global top-K.
+    // Without a limit there is nothing to cut, so the shards' hits are gathered
+    // and sorted once instead.
+    public List<SearchHit> searchTopK(String[] terms, double[] weights, int k) {
+        if (terms.length == 0) {
+            return Collections.emptyList();
+        }
+        if (k == Integer.MAX_VALUE) {
+            List<SearchHit> hits = new ArrayList<>();
+            for (IndexShard shard : shards) {
+                shard.collectHits(terms, weights, hits);
+            }
+            hits.sort(RESULT_ORDER);
+            return hits;
+        }
+        if (shards.length == 1) {
+            return shards[0].topK(terms, weights, k);
+        }
+        return pool.invoke(new ShardSearchTask(terms, weights, k, 0, shards.length));
+    }
+
+    private class ShardSearchTask extends RecursiveTask<List<SearchHit>> {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] terms;
+        private final double[] weights;
+        private final int k;
+        private final int from;
+        private final int to;
+
+        ShardSearchTask(String[] terms, double[] weights, int k, int from, int to) {
+            this.terms = terms;
+            this.weights = weights;
+            this.k = k;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<SearchHit> compute() {
+            if (to - from == 1) {
+                return shards[from].topK(terms, weights, k);
+            }
+            int mid = (from + to) >>> 1;
+            ShardSearchTask left = new ShardSearchTask(terms, weights, k, from, mid);
+            left.fork();
+            List<SearchHit> right = new ShardSearchTask(terms, weights, k, mid, to).compute();
+            return mergeTopK(left.join(), right, k);
+        }
+    }
+
+    // Merges two lists already sorted by RESULT_ORDER, keeping at most k entries.
+    // Documents live in exactly one shard, so no key appears in both lists.
+    private static List<SearchHit> mergeTopK(List<SearchHit> a, List<SearchHit> b, int k) {
+        if (a.isEmpty())
+            return b;
+        if (b.isEmpty())
+            return a;
+
+        List<SearchHit> merged = new ArrayList<>(Math.min(k, a.size() + b.size()));
+        int i = 0, j = 0;
+        while (merged.size() < k && (i < a.size() || j < b.size())) {
+            if (j >= b.size() || (i < a.size() && RESULT_ORDER.compare(a.get(i), b.get(j)) <= 0)) {
+                merged.add(a.get(i++));
+            } else {
+                merged.add(b.get(j++));
+            }
+        }
+        return merged;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public String getAllPlans() {
+        return planStore.toJson();
+    }
+
+    public PlanStore getPlanStore() {
+        return planStore;
+    }
+
+    public long getIndexVersion() {
+        return indexVersion.get();
+    }
+
+    public int getTermCount() {
+        return getTermDictionary().length;
+    }
+
+    // Most frequent words across all shards, highest count first
+    public List<Map.Entry<String, Integer>> topFrequencies(int limit) {
         Map<String, Integer> totalFreq = new HashMap<>();
-        for (Map.Entry<String, Map<String, Integer>> entry : invertedIndex.entrySet()) {
-            int sum = entry.getValue().values().stream().mapToInt(Integer::intValue).sum();
-            totalFreq.put(entry.getKey(), sum);
+        for (IndexShard shard : shards) {
+            shard.collectFrequencies(totalFreq);
         }
 
         List<Map.Entry<String, Integer>> sorted = new ArrayList<>(totalFreq.entrySet());
         sorted.sort((a, b) -> b.getValue().compareTo(a.getValue()));
+        return sorted.size() > limit ? new ArrayList<>(sorted.subList(0, limit)) : sorted;
+    }
+
+    public String getFrequencyStats() {
+        List<Map.Entry<String, Integer>> sorted = topFrequencies(20);
 
         StringBuilder json = new StringBuilder("[");
-        int limit = Math.min(20, sorted.size());
+        int limit = sorted.size();
         for (int i = 0; i < limit; i++) {
             String word = escapeJsonValue(sorted.get(i).getKey());
             json.append(String.format("{\"word\": \"%s\", \"count\": %d}", word,
@@ -281,8 +752,26 @@ public class SearchEngine {
         return json.toString();
     }
 
+    // Restores the counts saved by the log and records every later search to it
+    public void attachHistoryLog(SearchHistoryLog log) throws IOException {
+        Map<String, Integer> recovered = log.open();
+        synchronized (searchHistory) {
+            for (Map.Entry<String, Integer> entry : recovered.entrySet()) {
+                searchHistory.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+        }
+        historyLog = log;
+    }
+
+    public String getTrending(TrendingQueries.Window window, int limit) {
+        return trending.toJson(window, limit);
+    }
+
     public String getSearchHistory() {
-        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(searchHistory.entrySet());
+        List<Map.Entry<String, Integer>> sorted;
+        synchronized (searchHistory) {
+            sorted = new ArrayList<>(searchHistory.entrySet());
+        }
         sorted.sort((a, b) -> b.getValue().compareTo(a.getValue()));
 
         StringBuilder json = new StringBuilder("[");
@@ -297,9 +786,32 @@ public class SearchEngine {
         return json.toString();
     }
 
-    private static String escapeJsonValue(String s) {
+    // Shared by the classes that write JSON by hand (TrendingQueries, EventStream, TextExtraction).
+    // Carriage returns are dropped and other control characters become spaces, which also
+    // covers the arbitrary text /api/extract reads.
+    static String escapeJsonValue(String s) {
         if (s == null)
             return "";
-        return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", " ").replace("\r", "").replace("\t", " ");
+        int clean = 0;
+        while (clean < s.length() && s.charAt(clean) >= 0x20 && s.charAt(clean) != '"' && s.charAt(clean) != '\\') {
+            clean++;
+        }
+        if (clean == s.length()) {
+            return s;
+        }
+        StringBuilder escaped = new StringBuilder(s.length() + 8).append(s, 0, clean);
+        for (int i = clean; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c == '\r') {
+                continue;
+            } else if (c < 0x20) {
+                escaped.append(' ');
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
     }
 }
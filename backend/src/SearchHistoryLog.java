@@ -0,0 +1,339 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Write-behind persistence for SearchEngine's search history. record() only queues the term;
+// a writer thread appends queued terms in batches (group commit) to the current log file and
+// syncs them according to the fsync policy. Logs are compacted into a snapshot of counts
+// after compactAfterRecords records or, once anything was recorded, compactIntervalMs; and at
+// open when more than one log was replayed, since every start begins a new log.
+//
+// Files in the directory:
+//   history.snapshot   "#generation N" then one "count<TAB>term" line per term; it covers
+//                      every log with a generation below N
+//   history.<gen>.log  one escaped term per line, appended in search order
+public class SearchHistoryLog implements Closeable {
+
+    public enum FsyncPolicy {
+        EVERY_BATCH, // force each batch to disk before taking the next one
+        INTERVAL,    // force at most once per fsyncIntervalMs
+        NEVER        // leave it to the OS
+    }
+
+    private static final String SNAPSHOT_FILE = "history.snapshot";
+    private static final String LOG_PREFIX = "history.";
+    private static final String LOG_SUFFIX = ".log";
+    private static final int QUEUE_CAPACITY = 65536;
+    private static final int MAX_BATCH = 4096;
+
+    private final File dir;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMs;
+    private final long compactAfterRecords;
+    private final long compactIntervalMs;
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+
+    // Owned by the writer thread after open()
+    private final Map<String, Integer> counts = new HashMap<>();
+    private FileChannel log;
+    private long generation;
+    private long recordsSinceCompaction;
+    private long lastCompaction = System.currentTimeMillis();
+    private long lastSync = System.currentTimeMillis();
+    private boolean unsynced;
+
+    private Thread writer;
+    private volatile boolean running;
+
+    public SearchHistoryLog(File dir, FsyncPolicy fsyncPolicy, long fsyncIntervalMs, long compactAfterRecords,
+            long compactIntervalMs) {
+        this.dir = dir;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        this.compactAfterRecords = compactAfterRecords;
+        this.compactIntervalMs = compactIntervalMs;
+    }
+
+    // Replays the snapshot and the logs after it, starts a new log generation and the
+    // writer thread, and returns the recovered counts
+    public Map<String, Integer> open() throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create history directory " + dir);
+        }
+
+        long firstLog = readSnapshot();
+        List<Long> generations = logGenerations();
+        long replayed = 0;
+        int replayedLogs = 0;
+        for (long gen : generations) {
+            if (gen >= firstLog) {
+                replayed += replayLog(logFile(gen));
+                replayedLogs++;
+            }
+        }
+        recordsSinceCompaction = replayed;
+
+        generation = generations.isEmpty() ? firstLog : Math.max(firstLog, generations.get(generations.size() - 1) + 1);
+        log = openLog(generation);
+        // Otherwise a server restarted more often than it sees compactAfterRecords searches
+        // collects a log per start and replays all of them every time
+        if (replayedLogs > 1) {
+            try {
+                compact();
+            } catch (IOException e) {
+                System.out.println("Error compacting search history: " + e.getMessage());
+            }
+        }
+
+        running = true;
+        writer = new Thread(this::writeLoop, "search-history-writer");
+        writer.setDaemon(true);
+        writer.start();
+        return new HashMap<>(counts);
+    }
+
+    // Called on the search path: never blocks and never touches the disk
+    public void record(String term) {
+        if (!queue.offer(term)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    // Drains the queue, syncs the log and stops the writer
+    @Override
+    public void close() throws IOException {
+        running = false;
+        if (writer != null) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (log != null && log.isOpen()) {
+            log.force(false);
+            log.close();
+        }
+    }
+
+    private void writeLoop() {
+        List<String> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                String first = queue.poll(Math.max(1, fsyncIntervalMs), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    // Everything queued while the previous batch was syncing commits together
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    append(batch);
+                    batch.clear();
+                }
+                syncIfDue();
+                if (recordsSinceCompaction >= compactAfterRecords || (recordsSinceCompaction > 0
+                        && System.currentTimeMillis() - lastCompaction >= compactIntervalMs)) {
+                    compact();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                System.out.println("Error writing search history: " + e.getMessage());
+                batch.clear();
+            }
+        }
+    }
+
+    private void append(List<String> batch) throws IOException {
+        StringBuilder lines = new StringBuilder(batch.size() * 16);
+        for (String term : batch) {
+            lines.append(escape(term)).append('\n');
+            counts.merge(term, 1, Integer::sum);
+        }
+        writeFully(log, ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8)));
+        recordsSinceCompaction += batch.size();
+        unsynced = true;
+        if (fsyncPolicy == FsyncPolicy.EVERY_BATCH) {
+            sync();
+        }
+    }
+
+    private void syncIfDue() throws IOException {
+        if (unsynced && fsyncPolicy == FsyncPolicy.INTERVAL
+                && System.currentTimeMillis() - lastSync >= fsyncIntervalMs) {
+            sync();
+        }
+    }
+
+    private void sync() throws IOException {
+        log.force(false);
+        lastSync = System.currentTimeMillis();
+        unsynced = false;
+    }
+
+    // Switches to a new log generation, writes the counts as a snapshot covering every older
+    // generation, then deletes those logs. A crash at any step leaves a consistent pair: either
+    // the old snapshot plus all logs, or the new snapshot plus the logs it does not cover.
+    // The new log is opened before the old one is closed, so if that fails appends carry on
+    // in the old generation. A failed compaction is retried after another compactAfterRecords
+    // or compactIntervalMs.
+    private void compact() throws IOException {
+        recordsSinceCompaction = 0;
+        lastCompaction = System.currentTimeMillis();
+        sync();
+        FileChannel next = openLog(generation + 1);
+        FileChannel previous = log;
+        log = next;
+        generation++;
+        try {
+            previous.close();
+        } catch (IOException e) {
+            // Already synced; nothing is lost if the close fails
+        }
+
+        Path snapshot = new File(dir, SNAPSHOT_FILE).toPath();
+        Path temp = new File(dir, SNAPSHOT_FILE + ".tmp").toPath();
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            StringBuilder text = new StringBuilder("#generation ").append(generation).append('\n');
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                text.append(entry.getValue()).append('\t').append(escape(entry.getKey())).append('\n');
+            }
+            writeFully(out, ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)));
+            out.force(true);
+        }
+        Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // The rename is only durable once the directory is; until then a crash may bring back
+        // the old snapshot, which is why the old logs go only after this
+        syncDirectory();
+
+        for (long gen : logGenerations()) {
+            if (gen < generation) {
+                Files.deleteIfExists(logFile(gen).toPath());
+            }
+        }
+    }
+
+    // Forces the directory entries (new log, renamed snapshot) to disk. Some platforms,
+    // Windows among them, cannot open a directory for this and the entry is left to the OS.
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // Not supported here
+        }
+    }
+
+    // Returns the first log generation not covered by the snapshot
+    private long readSnapshot() throws IOException {
+        File snapshot = new File(dir, SNAPSHOT_FILE);
+        if (!snapshot.exists()) {
+            return 0;
+        }
+
+        long firstLog = 0;
+        try (BufferedReader br = new BufferedReader(
+                new InputStreamReader(new FileInputStream(snapshot), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith("#generation ")) {
+                    firstLog = Long.parseLong(line.substring(12).trim());
+                    continue;
+                }
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    counts.merge(unescape(line.substring(tab + 1)), Integer.parseInt(line.substring(0, tab)),
+                            Integer::sum);
+                }
+            }
+        }
+        return firstLog;
+    }
+
+    private long replayLog(File file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        long records = 0;
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                counts.merge(unescape(new String(bytes, start, i - start, StandardCharsets.UTF_8)), 1,
+                        Integer::sum);
+                records++;
+                start = i + 1;
+            }
+        }
+        // Anything after the last newline is a record torn by a crash and is dropped
+        return records;
+    }
+
+    private List<Long> logGenerations() {
+        List<Long> generations = new ArrayList<>();
+        String[] names = dir.list();
+        if (names == null) {
+            return generations;
+        }
+        for (String name : names) {
+            if (name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX)) {
+                try {
+                    generations.add(Long.parseLong(name.substring(LOG_PREFIX.length(),
+                            name.length() - LOG_SUFFIX.length())));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private File logFile(long gen) {
+        return new File(dir, LOG_PREFIX + gen + LOG_SUFFIX);
+    }
+
+    // Synced records in a new log are only safe once its directory entry is too
+    private FileChannel openLog(long gen) throws IOException {
+        FileChannel channel = FileChannel.open(logFile(gen).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        syncDirectory();
+        return channel;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // Terms come straight from the query string, so newlines, tabs and backslashes are escaped
+    private static String escape(String term) {
+        if (term.indexOf('\\') < 0 && term.indexOf('\n') < 0 && term.indexOf('\t') < 0 && term.indexOf('\r') < 0) {
+            return term;
+        }
+        return term.replace("\\", "\\\\").replace("\n", "\\n").replace("\t", "\\t").replace("\r", "\\r");
+    }
+
+    private static String unescape(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder term = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                term.append(next == 'n' ? '\n' : next == 't' ? '\t' : next == 'r' ? '\r' : next);
+            } else {
+                term.append(c);
+            }
+        }
+        return term.toString();
+    }
+}
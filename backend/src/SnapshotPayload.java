@@ -0,0 +1,32 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// A response serialised once and served many times, e.g. the /api/plans body. The bytes live
+// in a direct buffer, so the NIO transport writes them to the socket without a heap copy.
+public class SnapshotPayload {
+
+    private final Map<String, String> headers;
+    private final ByteBuffer body;
+
+    public SnapshotPayload(Map<String, String> headers, String body) {
+        this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        this.body = buffer.asReadOnlyBuffer();
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    // A fresh view per response: position and limit are per reader, the bytes are shared
+    public ByteBuffer body() {
+        return body.duplicate();
+    }
+
+    public int length() {
+        return body.capacity();
+    }
+}
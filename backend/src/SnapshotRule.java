@@ -0,0 +1,185 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// One provider's plan extraction rule for saved HTML pages, read from snapshot_rules.properties.
+// The page's text lines (HtmlText) are grouped into cards: a line matching cardEnd closes the
+// current card, and a line matching section closes it too and names the section of the cards
+// that follow. Each card's lines are joined with spaces and searched with the field patterns.
+// A card is a plan when price and data or speed are found and exclude is not.
+public class SnapshotRule {
+
+    private static final String[] PATTERNS = { "price", "data", "speed", "name" };
+    private static final String[] TEMPLATES = { "planName", "features", "category" };
+
+    private final String name;
+    private final String match;
+    private final String provider;
+    private final Pattern cardEnd;
+    private final Pattern section;
+    private final Pattern exclude;
+    private final Map<String, Pattern> patterns = new HashMap<>();
+    private final Map<String, String> templates = new HashMap<>();
+
+    private SnapshotRule(String name, Properties config) {
+        this.name = name;
+        this.match = require(config, name + ".match").toLowerCase(Locale.ROOT);
+        this.provider = require(config, name + ".provider");
+        this.cardEnd = Pattern.compile(require(config, name + ".cardEnd"));
+        this.section = optional(config, name + ".section");
+        this.exclude = optional(config, name + ".exclude");
+        for (String field : PATTERNS) {
+            Pattern pattern = optional(config, name + "." + field);
+            if (pattern != null) {
+                patterns.put(field, pattern);
+            }
+        }
+        if (!patterns.containsKey("price")) {
+            throw new IllegalArgumentException("Missing snapshot rule property: " + name + ".price");
+        }
+        for (String field : TEMPLATES) {
+            templates.put(field, config.getProperty(name + "." + field, "").trim());
+        }
+    }
+
+    public static List<SnapshotRule> loadAll(File file) throws IOException {
+        Properties config = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            config.load(reader);
+        }
+
+        List<SnapshotRule> rules = new ArrayList<>();
+        for (String name : require(config, "rules").split(",")) {
+            if (!name.trim().isEmpty()) {
+                rules.add(new SnapshotRule(name.trim(), config));
+            }
+        }
+        return rules;
+    }
+
+    // First rule whose match text appears in the file name, or failing that in the page title
+    public static SnapshotRule forPage(List<SnapshotRule> rules, String fileName, String title) {
+        String lowerName = fileName.toLowerCase(Locale.ROOT);
+        for (SnapshotRule rule : rules) {
+            if (lowerName.contains(rule.match)) {
+                return rule;
+            }
+        }
+        String lowerTitle = title.toLowerCase(Locale.ROOT);
+        for (SnapshotRule rule : rules) {
+            if (lowerTitle.contains(rule.match)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    // Plans on the page as {provider, planName, price, speed, data, features, category}
+    public List<String[]> extract(List<String> lines) {
+        List<String[]> plans = new ArrayList<>();
+        String currentSection = "";
+        StringBuilder card = new StringBuilder();
+        for (String line : lines) {
+            boolean isSection = section != null && section.matcher(line).matches();
+            if (isSection || cardEnd.matcher(line).matches()) {
+                String[] plan = plan(card.toString(), currentSection);
+                if (plan != null) {
+                    plans.add(plan);
+                }
+                card.setLength(0);
+                if (isSection) {
+                    currentSection = line;
+                }
+                continue;
+            }
+            if (card.length() > 0) {
+                card.append(' ');
+            }
+            card.append(line);
+        }
+        // Whatever follows the last cardEnd is page furniture, not a card
+        return plans;
+    }
+
+    private String[] plan(String card, String currentSection) {
+        if (card.isEmpty() || (exclude != null && exclude.matcher(card).find())) {
+            return null;
+        }
+        Map<String, String> values = new HashMap<>();
+        values.put("provider", provider);
+        values.put("section", currentSection);
+        for (String field : PATTERNS) {
+            Pattern pattern = patterns.get(field);
+            values.put(field, pattern == null ? "" : find(pattern, card));
+        }
+        String price = values.get("price");
+        if (price.isEmpty() || (values.get("data").isEmpty() && values.get("speed").isEmpty())) {
+            return null;
+        }
+        values.put("price", "$" + price);
+
+        return new String[] { provider, apply("planName", values), values.get("price"), values.get("speed"),
+                values.get("data"), apply("features", values), apply("category", values) };
+    }
+
+    // The capture groups of the first match, joined, or the whole match when there are none
+    private static String find(Pattern pattern, String card) {
+        Matcher matcher = pattern.matcher(card);
+        if (!matcher.find()) {
+            return "";
+        }
+        if (matcher.groupCount() == 0) {
+            return matcher.group().trim();
+        }
+        StringBuilder value = new StringBuilder();
+        for (int g = 1; g <= matcher.groupCount(); g++) {
+            if (matcher.group(g) != null) {
+                value.append(matcher.group(g));
+            }
+        }
+        return value.toString().trim();
+    }
+
+    // "Koodo {data} at {speed}" with the card's values; placeholders with no value are dropped
+    private String apply(String field, Map<String, String> values) {
+        String template = templates.get(field);
+        StringBuilder value = new StringBuilder();
+        int i = 0;
+        while (i < template.length()) {
+            int open = template.indexOf('{', i);
+            int close = open < 0 ? -1 : template.indexOf('}', open);
+            if (close < 0) {
+                value.append(template, i, template.length());
+                break;
+            }
+            value.append(template, i, open);
+            String key = template.substring(open + 1, close);
+            value.append(values.containsKey(key) ? values.get(key) : "");
+            i = close + 1;
+        }
+        return value.toString().replaceAll("\\s+", " ").trim();
+    }
+
+    private static Pattern optional(Properties config, String key) {
+        String value = config.getProperty(key);
+        return value == null || value.trim().isEmpty() ? null : Pattern.compile(value.trim());
+    }
+
+    private static String require(Properties config, String key) {
+        String value = config.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing snapshot rule property: " + key);
+        }
+        return value.trim();
+    }
+}
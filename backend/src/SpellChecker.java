@@ -6,19 +6,33 @@ public class SpellChecker {
     private Set<String> vocabulary = new HashSet<>();
 
     public void buildVocabulary(File file) {
+        try {
+            vocabulary.addAll(vocabularyOf(file));
+        } catch (IOException e) {
+            System.out.println("Error reading file for vocabulary: " + file.getName());
+        }
+    }
+
+    public void addVocabulary(Collection<String> words) {
+        vocabulary.addAll(words);
+    }
+
+    // Lower-cased words of three letters or more in a file, as the spell checker and
+    // WordCompletion take them
+    public static Set<String> vocabularyOf(File file) throws IOException {
+        Set<String> words = new HashSet<>();
         try (BufferedReader br = new BufferedReader(new FileReader(file))) {
             String line;
             while ((line = br.readLine()) != null) {
                 String[] tokens = line.toLowerCase().replaceAll("[^a-z\\s]", " ").split("\\s+");
                 for (String token : tokens) {
                     if (token.length() > 2) {
-                        vocabulary.add(token);
+                        words.add(token);
                     }
                 }
             }
-        } catch (IOException e) {
-            System.out.println("Error reading file for vocabulary: " + file.getName());
         }
+        return words;
     }
 
     public String check(String word) {
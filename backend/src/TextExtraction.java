@@ -0,0 +1,194 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Streams an upload through TextScanner and writes the results as they are found. The input is
+// read in blocks, each cut at a safe split (TextScanner.lastSafeSplit) with the tail carried
+// into the next block, so no match is lost at a boundary. Blocks are scanned in parallel on the
+// pool while the next ones are read; results are written in input order, deduplicated, once
+// each block is done. Memory stays at a few blocks per upload whatever its size.
+//
+// Output is newline-delimited JSON, one object per line:
+//   {"type": "email"|"phone"|"url", "value": "..."}   first occurrence of each value
+//   {"type": "progress", ...counts}                    after each block
+//   {"type": "done", ...counts, "elapsedMs": n}         at the end
+// Emails are only listed when their domain contains the domain filter (case-insensitive);
+// the counts report both all emails and the matching ones.
+public class TextExtraction {
+
+    private static final int BLOCK_SIZE = 4 * 1024 * 1024;
+    // A block with no safe split grows up to this, then is cut where it ends
+    private static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+    // Distinct values listed per kind; counting goes on past it
+    private static final int MAX_LISTED = 10000;
+
+    private final ExecutorService pool;
+    private final int parallelism;
+    private final String domainFilter;
+
+    // Owned by the thread calling run()
+    private final Map<TextScanner.Kind, Set<String>> listed = new EnumMap<>(TextScanner.Kind.class);
+    private long bytes;
+    private long emails;
+    private long matchingEmails;
+    private long phones;
+    private long urls;
+    private boolean truncated;
+
+    private static class BlockResult {
+        final int length;
+        final List<TextScanner.Kind> kinds = new ArrayList<>();
+        final List<String> values = new ArrayList<>();
+        long emails;
+        long matchingEmails;
+        long phones;
+        long urls;
+
+        BlockResult(int length) {
+            this.length = length;
+        }
+    }
+
+    public TextExtraction(ExecutorService pool, int parallelism, String domainFilter) {
+        this.pool = pool;
+        this.parallelism = Math.max(1, parallelism);
+        this.domainFilter = domainFilter == null || domainFilter.trim().isEmpty() ? null
+                : domainFilter.trim().toLowerCase(Locale.ROOT);
+        for (TextScanner.Kind kind : TextScanner.Kind.values()) {
+            listed.put(kind, new HashSet<>());
+        }
+    }
+
+    public void run(InputStream in, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        Deque<Future<BlockResult>> inFlight = new ArrayDeque<>();
+
+        byte[] buffer = new byte[BLOCK_SIZE];
+        int length = 0;
+        try {
+            while (true) {
+                int read = in.read(buffer, length, buffer.length - length);
+                if (read > 0) {
+                    length += read;
+                    if (length < buffer.length) {
+                        continue;
+                    }
+                }
+                boolean eof = read < 0;
+                if (length == 0) {
+                    break;
+                }
+
+                int split = eof ? length : TextScanner.lastSafeSplit(buffer, 0, length);
+                if (split < 0) {
+                    if (buffer.length < MAX_BLOCK_SIZE) {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                        continue;
+                    }
+                    split = length; // no whitespace in 64 MB: a match across this cut is missed
+                }
+
+                byte[] block = Arrays.copyOf(buffer, split);
+                inFlight.add(pool.submit(() -> scanBlock(block)));
+                System.arraycopy(buffer, split, buffer, 0, length - split);
+                length -= split;
+
+                // Bounded read-ahead, and results go out as soon as the oldest block is done
+                while (!inFlight.isEmpty() && (inFlight.size() > parallelism * 2 || inFlight.peek().isDone())) {
+                    write(inFlight.poll(), writer);
+                }
+                if (eof) {
+                    break;
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                write(inFlight.poll(), writer);
+            }
+        } finally {
+            for (Future<BlockResult> pending : inFlight) {
+                pending.cancel(true);
+            }
+        }
+
+        writer.write("{\"type\": \"done\", " + counts()
+                + ", \"elapsedMs\": " + (System.nanoTime() - start) / 1_000_000 + "}\n");
+        writer.flush();
+    }
+
+    private BlockResult scanBlock(byte[] block) {
+        BlockResult result = new BlockResult(block.length);
+        TextScanner.scan(block, 0, block.length, (kind, data, start, end) -> {
+            String value = TextScanner.text(kind, data, start, end);
+            switch (kind) {
+                case EMAIL:
+                    result.emails++;
+                    if (!matchesDomain(value)) {
+                        return;
+                    }
+                    result.matchingEmails++;
+                    break;
+                case PHONE:
+                    result.phones++;
+                    break;
+                default:
+                    result.urls++;
+                    break;
+            }
+            result.kinds.add(kind);
+            result.values.add(value);
+        });
+        return result;
+    }
+
+    private boolean matchesDomain(String email) {
+        if (domainFilter == null) {
+            return true;
+        }
+        int at = email.indexOf('@');
+        return email.substring(at + 1).toLowerCase(Locale.ROOT).contains(domainFilter);
+    }
+
+    private void write(Future<BlockResult> pending, Writer writer) throws IOException {
+        BlockResult result;
+        try {
+            result = pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Extraction interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Extraction failed: " + e.getCause(), e.getCause());
+        }
+
+        for (int i = 0; i < result.values.size(); i++) {
+            TextScanner.Kind kind = result.kinds.get(i);
+            String value = result.values.get(i);
+            Set<String> seen = listed.get(kind);
+            if (seen.contains(value)) {
+                continue;
+            }
+            if (seen.size() >= MAX_LISTED) {
+                truncated = true;
+                continue;
+            }
+            seen.add(value);
+            writer.write("{\"type\": \"" + kind.name().toLowerCase(Locale.ROOT) + "\", \"value\": \""
+                    + SearchEngine.escapeJsonValue(value) + "\"}\n");
+        }
+        bytes += result.length;
+        emails += result.emails;
+        matchingEmails += result.matchingEmails;
+        phones += result.phones;
+        urls += result.urls;
+        writer.write("{\"type\": \"progress\", " + counts() + "}\n");
+        writer.flush();
+    }
+
+    private String counts() {
+        return String.format("\"bytes\": %d, \"emails\": %d, \"matchingEmails\": %d, \"phones\": %d, \"urls\": %d, "
+                + "\"uniqueEmails\": %d, \"uniquePhones\": %d, \"uniqueUrls\": %d, \"truncated\": %b",
+                bytes, emails, matchingEmails, phones, urls, listed.get(TextScanner.Kind.EMAIL).size(),
+                listed.get(TextScanner.Kind.PHONE).size(), listed.get(TextScanner.Kind.URL).size(), truncated);
+    }
+}
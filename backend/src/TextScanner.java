@@ -0,0 +1,345 @@
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Finds emails, phone numbers and URLs in raw bytes with table-driven DFAs, one per kind,
+// instead of backtracking regexes. The DFAs are built once from small patterns (Thompson NFA
+// plus subset construction over byte classes), so scanning is a table lookup per byte.
+//
+// The kinds are matched independently, like running three regexes over the text: a URL may
+// contain an email. Within a kind, matches are leftmost-longest and do not overlap:
+//   EMAIL  [A-Za-z0-9._%+-]+ @ [A-Za-z0-9.-]+ . [A-Za-z]{2,}
+//   PHONE  (+? 1 sep?)? ( (ddd) | ddd ) sep? ddd sep? dddd, sep one of - . or whitespace,
+//          and not part of a longer run of digits
+//   URL    http(s):// followed by everything up to whitespace
+// Only ASCII is classified; other bytes are never part of an email or phone number and are
+// kept in URLs, which are decoded as UTF-8.
+public class TextScanner {
+
+    public enum Kind {
+        EMAIL, PHONE, URL
+    }
+
+    public interface MatchHandler {
+        void match(Kind kind, byte[] data, int start, int end);
+    }
+
+    private static final Dfa EMAIL_DFA;
+    private static final Dfa PHONE_DFA;
+    private static final Dfa URL_DFA;
+
+    private static final boolean[] LOCAL = new boolean[256];
+    private static final boolean[] DIGIT = new boolean[256];
+    private static final boolean[] SPACE = new boolean[256];
+
+    static {
+        boolean[] alpha = set("abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        boolean[] digit = set("0123456789");
+        boolean[] alnum = union(alpha, digit);
+        boolean[] local = union(alnum, set("._%+-"));
+        boolean[] domain = union(alnum, set(".-"));
+        boolean[] space = set(" \t\n\r\f\u000B");
+        boolean[] separator = union(space, set("-."));
+        boolean[] notSpace = new boolean[256];
+        for (int b = 0; b < 256; b++) {
+            notSpace[b] = !space[b];
+        }
+
+        System.arraycopy(local, 0, LOCAL, 0, 256);
+        System.arraycopy(digit, 0, DIGIT, 0, 256);
+        System.arraycopy(space, 0, SPACE, 0, 256);
+
+        Nfa email = new Nfa();
+        EMAIL_DFA = email.compile(email.seq(
+                email.plus(local), email.chars(set("@")), email.plus(domain), email.chars(set(".")),
+                email.chars(alpha), email.plus(alpha)));
+
+        Nfa phone = new Nfa();
+        PHONE_DFA = phone.compile(phone.seq(
+                phone.opt(phone.seq(phone.opt(phone.chars(set("+"))), phone.chars(set("1")),
+                        phone.opt(phone.chars(separator)))),
+                phone.alt(phone.seq(phone.chars(set("(")), phone.digits(3, digit), phone.chars(set(")"))),
+                        phone.digits(3, digit)),
+                phone.opt(phone.chars(separator)), phone.digits(3, digit),
+                phone.opt(phone.chars(separator)), phone.digits(4, digit)));
+
+        Nfa url = new Nfa();
+        URL_DFA = url.compile(url.seq(url.literal("http"), url.opt(url.chars(set("s"))), url.literal("://"),
+                url.plus(notSpace)));
+    }
+
+    private TextScanner() {
+    }
+
+    // Scans data[from, to). Matches never run past `to`, so `to` must be the end of the
+    // input or a safe split (see lastSafeSplit); `from` must be 0 or a safe split too.
+    public static void scan(byte[] data, int from, int to, MatchHandler handler) {
+        int emailResume = from;
+        int phoneResume = from;
+        int urlResume = from;
+
+        for (int i = from; i < to; i++) {
+            int b = data[i] & 0xFF;
+
+            // An email can only start where a run of local-part characters starts (or right
+            // after the previous email): any later start reaches the same '@' and domain
+            if (i >= emailResume && LOCAL[b] && (i == from || i == emailResume || !LOCAL[data[i - 1] & 0xFF])) {
+                int end = EMAIL_DFA.longestMatch(data, i, to, false);
+                if (end > 0) {
+                    handler.match(Kind.EMAIL, data, i, end);
+                    emailResume = end;
+                }
+            }
+            if (i >= phoneResume && (DIGIT[b] || b == '+' || b == '(') && (i == from || !DIGIT[data[i - 1] & 0xFF])) {
+                int end = PHONE_DFA.longestMatch(data, i, to, true);
+                if (end > 0) {
+                    handler.match(Kind.PHONE, data, i, end);
+                    phoneResume = end;
+                }
+            }
+            if (i >= urlResume && b == 'h') {
+                int end = URL_DFA.longestMatch(data, i, to, false);
+                if (end > 0) {
+                    handler.match(Kind.URL, data, i, end);
+                    urlResume = end;
+                }
+            }
+        }
+    }
+
+    // The largest p in (from, to] where the input can be cut without changing any match:
+    // whitespace before p, and no digit or '(' at p, so no email, URL or phone number spans
+    // it and no match ends exactly there. -1 if there is none.
+    public static int lastSafeSplit(byte[] data, int from, int to) {
+        for (int p = to - 1; p > from; p--) {
+            int b = data[p] & 0xFF;
+            if (SPACE[data[p - 1] & 0xFF] && !DIGIT[b] && b != '(') {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    public static String text(Kind kind, byte[] data, int start, int end) {
+        return new String(data, start, end - start,
+                kind == Kind.URL ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean[] set(String chars) {
+        boolean[] set = new boolean[256];
+        for (char c : chars.toCharArray()) {
+            set[c] = true;
+        }
+        return set;
+    }
+
+    private static boolean[] union(boolean[] a, boolean[] b) {
+        boolean[] set = new boolean[256];
+        for (int i = 0; i < 256; i++) {
+            set[i] = a[i] || b[i];
+        }
+        return set;
+    }
+
+    // Transition table over byte classes: bytes that every edge set treats alike share a class
+    static class Dfa {
+        private final int[] byteClass;
+        private final int classes;
+        private final int[] next; // state * classes + class -> state, -1 when dead
+        private final boolean[] accepting;
+
+        Dfa(int[] byteClass, int classes, int[] next, boolean[] accepting) {
+            this.byteClass = byteClass;
+            this.classes = classes;
+            this.next = next;
+            this.accepting = accepting;
+        }
+
+        // End of the longest match starting at `start`, or -1. With digitBoundary the match
+        // must not be followed by a digit.
+        int longestMatch(byte[] data, int start, int limit, boolean digitBoundary) {
+            int state = 0;
+            int end = -1;
+            for (int i = start; i < limit; i++) {
+                state = next[state * classes + byteClass[data[i] & 0xFF]];
+                if (state < 0) {
+                    break;
+                }
+                if (accepting[state] && (!digitBoundary || i + 1 == limit || !DIGIT[data[i + 1] & 0xFF])) {
+                    end = i + 1;
+                }
+            }
+            return end;
+        }
+    }
+
+    // Thompson construction. A fragment is {start, end}; the end state has no outgoing
+    // edges until the fragment is joined to something.
+    static class Nfa {
+        private final List<boolean[]> edgeSet = new ArrayList<>();
+        private final List<Integer> edgeTarget = new ArrayList<>();
+        private final List<int[]> epsilon = new ArrayList<>();
+
+        private int state() {
+            edgeSet.add(null);
+            edgeTarget.add(-1);
+            epsilon.add(new int[0]);
+            return edgeSet.size() - 1;
+        }
+
+        private void epsilon(int from, int to) {
+            int[] old = epsilon.get(from);
+            int[] grown = Arrays.copyOf(old, old.length + 1);
+            grown[old.length] = to;
+            epsilon.set(from, grown);
+        }
+
+        int[] chars(boolean[] set) {
+            int start = state();
+            int end = state();
+            edgeSet.set(start, set);
+            edgeTarget.set(start, end);
+            return new int[] { start, end };
+        }
+
+        int[] literal(String text) {
+            int[][] parts = new int[text.length()][];
+            for (int i = 0; i < text.length(); i++) {
+                parts[i] = chars(set(String.valueOf(text.charAt(i))));
+            }
+            return seq(parts);
+        }
+
+        int[] digits(int count, boolean[] digit) {
+            int[][] parts = new int[count][];
+            for (int i = 0; i < count; i++) {
+                parts[i] = chars(digit);
+            }
+            return seq(parts);
+        }
+
+        int[] seq(int[]... parts) {
+            for (int i = 0; i + 1 < parts.length; i++) {
+                epsilon(parts[i][1], parts[i + 1][0]);
+            }
+            return new int[] { parts[0][0], parts[parts.length - 1][1] };
+        }
+
+        int[] alt(int[] a, int[] b) {
+            int start = state();
+            int end = state();
+            epsilon(start, a[0]);
+            epsilon(start, b[0]);
+            epsilon(a[1], end);
+            epsilon(b[1], end);
+            return new int[] { start, end };
+        }
+
+        int[] opt(int[] a) {
+            int start = state();
+            int end = state();
+            epsilon(start, a[0]);
+            epsilon(start, end);
+            epsilon(a[1], end);
+            return new int[] { start, end };
+        }
+
+        // One or more of the set
+        int[] plus(boolean[] set) {
+            int[] one = chars(set);
+            epsilon(one[1], one[0]);
+            return one;
+        }
+
+        // Subset construction from the fragment's start; its end is the accepting state
+        Dfa compile(int[] fragment) {
+            // Byte classes: bytes with the same membership in every edge set
+            List<boolean[]> sets = new ArrayList<>();
+            for (boolean[] set : edgeSet) {
+                if (set != null && !sets.contains(set)) {
+                    sets.add(set);
+                }
+            }
+            int[] byteClass = new int[256];
+            Map<String, Integer> classIds = new HashMap<>();
+            int[] representative = new int[256];
+            for (int b = 0; b < 256; b++) {
+                StringBuilder signature = new StringBuilder();
+                for (boolean[] set : sets) {
+                    signature.append(set[b] ? '1' : '0');
+                }
+                Integer id = classIds.get(signature.toString());
+                if (id == null) {
+                    id = classIds.size();
+                    classIds.put(signature.toString(), id);
+                    representative[id] = b;
+                }
+                byteClass[b] = id;
+            }
+            int classes = classIds.size();
+
+            Map<BitSet, Integer> ids = new HashMap<>();
+            List<BitSet> states = new ArrayList<>();
+            BitSet initial = closure(singleton(fragment[0]));
+            ids.put(initial, 0);
+            states.add(initial);
+            List<int[]> rows = new ArrayList<>();
+            for (int s = 0; s < states.size(); s++) {
+                int[] row = new int[classes];
+                for (int c = 0; c < classes; c++) {
+                    BitSet moved = new BitSet();
+                    BitSet current = states.get(s);
+                    for (int n = current.nextSetBit(0); n >= 0; n = current.nextSetBit(n + 1)) {
+                        boolean[] set = edgeSet.get(n);
+                        if (set != null && set[representative[c]]) {
+                            moved.set(edgeTarget.get(n));
+                        }
+                    }
+                    if (moved.isEmpty()) {
+                        row[c] = -1;
+                        continue;
+                    }
+                    BitSet target = closure(moved);
+                    Integer id = ids.get(target);
+                    if (id == null) {
+                        id = states.size();
+                        ids.put(target, id);
+                        states.add(target);
+                    }
+                    row[c] = id;
+                }
+                rows.add(row);
+            }
+
+            int[] next = new int[states.size() * classes];
+            boolean[] accepting = new boolean[states.size()];
+            for (int s = 0; s < states.size(); s++) {
+                System.arraycopy(rows.get(s), 0, next, s * classes, classes);
+                accepting[s] = states.get(s).get(fragment[1]);
+            }
+            return new Dfa(byteClass, classes, next, accepting);
+        }
+
+        private BitSet closure(BitSet states) {
+            BitSet closed = (BitSet) states.clone();
+            Deque<Integer> work = new ArrayDeque<>();
+            for (int n = states.nextSetBit(0); n >= 0; n = states.nextSetBit(n + 1)) {
+                work.push(n);
+            }
+            while (!work.isEmpty()) {
+                for (int target : epsilon.get(work.pop())) {
+                    if (!closed.get(target)) {
+                        closed.set(target);
+                        work.push(target);
+                    }
+                }
+            }
+            return closed;
+        }
+
+        private static BitSet singleton(int state) {
+            BitSet set = new BitSet();
+            set.set(state);
+            return set;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+// Sliding-window query counts for "what is being searched right now". Time is split into a
+// ring of per-minute buckets (last hour) and a ring of per-hour buckets (last week). Each
+// bucket is a count-min sketch in an AtomicIntegerArray, and the terms worth reporting sit
+// in a fixed-size candidate table, so memory and the cost of record() stay the same however
+// many distinct queries arrive. No locks: buckets are recycled with a CAS on their epoch.
+// Counts are estimates; a sketch can over-count, and increments racing a recycle can be lost.
+public class TrendingQueries {
+
+    public enum Window {
+        FIVE_MINUTES("5m", 5, 60),
+        ONE_HOUR("1h", 60, 24 * 60),
+        ONE_DAY("24h", 24 * 60, 7 * 24 * 60);
+
+        final String label;
+        final int minutes;
+        final int baselineMinutes;
+
+        Window(String label, int minutes, int baselineMinutes) {
+            this.label = label;
+            this.minutes = minutes;
+            this.baselineMinutes = baselineMinutes;
+        }
+
+        public static Window fromLabel(String label) {
+            for (Window window : values()) {
+                if (window.label.equalsIgnoreCase(label)) {
+                    return window;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final int MINUTE_BUCKETS = 60;
+    private static final int HOUR_BUCKETS = 7 * 24;
+    private static final int SKETCH_DEPTH = 3;
+    private static final int SKETCH_WIDTH = 1024;
+    private static final int CANDIDATES = 512;
+    private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35 };
+
+    private static class Bucket {
+        final AtomicLong epoch = new AtomicLong(-1);
+        final AtomicIntegerArray counts = new AtomicIntegerArray(SKETCH_DEPTH * SKETCH_WIDTH);
+    }
+
+    public static class Trend {
+        public final String term;
+        public final int count;
+        public final double expected;
+        public final double score;
+
+        Trend(String term, int count, double expected, double score) {
+            this.term = term;
+            this.count = count;
+            this.expected = expected;
+            this.score = score;
+        }
+    }
+
+    private final Bucket[] minutes = newRing(MINUTE_BUCKETS);
+    private final Bucket[] hours = newRing(HOUR_BUCKETS);
+    private final AtomicReferenceArray<String> candidates = new AtomicReferenceArray<>(CANDIDATES);
+    private final LongSupplier clock;
+
+    public TrendingQueries() {
+        this(System::currentTimeMillis);
+    }
+
+    public TrendingQueries(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public void record(String term) {
+        long minute = clock.getAsLong() / 60_000;
+        int[] cells = cells(term);
+        increment(bucketFor(minutes, minute), cells);
+        increment(bucketFor(hours, minute / 60), cells);
+        offerCandidate(term, minute);
+    }
+
+    // Top terms by how far the window's count is above what the baseline rate predicts
+    public List<Trend> top(Window window, int limit) {
+        long minute = clock.getAsLong() / 60_000;
+        List<Trend> trends = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < CANDIDATES; i++) {
+            String term = candidates.get(i);
+            if (term == null || !seen.add(term)) {
+                continue;
+            }
+            int[] cells = cells(term);
+            int count = estimate(cells, minute, window.minutes);
+            if (count == 0) {
+                continue;
+            }
+            int baselineCount = estimate(cells, minute, window.baselineMinutes);
+            double baselineRate = Math.max(0, baselineCount - count)
+                    / (double) (window.baselineMinutes - window.minutes);
+            double expected = baselineRate * window.minutes;
+            double score = (count - expected) / Math.sqrt(expected + 1);
+            trends.add(new Trend(term, count, expected, score));
+        }
+
+        trends.sort((a, b) -> b.score != a.score ? Double.compare(b.score, a.score) : Integer.compare(b.count, a.count));
+        return trends.size() > limit ? new ArrayList<>(trends.subList(0, limit)) : trends;
+    }
+
+    public String toJson(Window window, int limit) {
+        StringBuilder json = new StringBuilder("[");
+        List<Trend> trends = top(window, limit);
+        for (int i = 0; i < trends.size(); i++) {
+            Trend trend = trends.get(i);
+            json.append(String.format(Locale.ROOT, "{\"term\": \"%s\", \"count\": %d, \"expected\": %.2f, \"score\": %.2f}",
+                    SearchEngine.escapeJsonValue(trend.term), trend.count, trend.expected, trend.score));
+            if (i < trends.size() - 1)
+                json.append(",");
+        }
+        json.append("]");
+        return json.toString();
+    }
+
+    // Count over the last `span` minutes: minute buckets up to an hour, hour buckets beyond
+    private int estimate(int[] cells, long minute, int span) {
+        if (span <= MINUTE_BUCKETS) {
+            return sumRing(minutes, minute, span, cells);
+        }
+        return sumRing(hours, minute / 60, (span + 59) / 60, cells);
+    }
+
+    private static int sumRing(Bucket[] ring, long now, int buckets, int[] cells) {
+        int best = Integer.MAX_VALUE;
+        for (int row = 0; row < SKETCH_DEPTH; row++) {
+            int sum = 0;
+            for (int back = 0; back < buckets; back++) {
+                long epoch = now - back;
+                Bucket bucket = ring[(int) Math.floorMod(epoch, (long) ring.length)];
+                if (bucket.epoch.get() == epoch) {
+                    sum += bucket.counts.get(cells[row]);
+                }
+            }
+            best = Math.min(best, sum);
+        }
+        return best;
+    }
+
+    // The bucket for this epoch, recycled first if it still holds an older one
+    private static Bucket bucketFor(Bucket[] ring, long epoch) {
+        Bucket bucket = ring[(int) Math.floorMod(epoch, (long) ring.length)];
+        long current = bucket.epoch.get();
+        if (current < epoch && bucket.epoch.compareAndSet(current, epoch)) {
+            for (int i = 0; i < bucket.counts.length(); i++) {
+                bucket.counts.set(i, 0);
+            }
+        }
+        return bucket;
+    }
+
+    private static void increment(Bucket bucket, int[] cells) {
+        for (int cell : cells) {
+            bucket.counts.incrementAndGet(cell);
+        }
+    }
+
+    // Two possible slots per term. A term takes an empty slot, or evicts the occupant
+    // when it has been searched more in the current and previous hour buckets.
+    private void offerCandidate(String term, long minute) {
+        int hash = mix(term.hashCode(), SEEDS[0]);
+        int first = Math.floorMod(hash, CANDIDATES);
+        int second = Math.floorMod(mix(hash, SEEDS[1]), CANDIDATES);
+
+        String a = candidates.get(first);
+        String b = candidates.get(second);
+        if (term.equals(a) || term.equals(b)) {
+            return;
+        }
+        if (a == null && candidates.compareAndSet(first, null, term)) {
+            return;
+        }
+        if (b == null && candidates.compareAndSet(second, null, term)) {
+            return;
+        }
+
+        int count = recentCount(term, minute);
+        int slot = first;
+        String victim = a;
+        int victimCount = victim == null ? 0 : recentCount(victim, minute);
+        if (b != null) {
+            int secondCount = recentCount(b, minute);
+            if (secondCount < victimCount) {
+                slot = second;
+                victim = b;
+                victimCount = secondCount;
+            }
+        }
+        if (count > victimCount) {
+            candidates.compareAndSet(slot, victim, term);
+        }
+    }
+
+    private int recentCount(String term, long minute) {
+        return sumRing(hours, minute / 60, 2, cells(term));
+    }
+
+    private static int[] cells(String term) {
+        int hash = term.hashCode();
+        int[] cells = new int[SKETCH_DEPTH];
+        for (int row = 0; row < SKETCH_DEPTH; row++) {
+            cells[row] = row * SKETCH_WIDTH + Math.floorMod(mix(hash, SEEDS[row]), SKETCH_WIDTH);
+        }
+        return cells;
+    }
+
+    private static int mix(int hash, int seed) {
+        int h = hash * seed;
+        h ^= h >>> 16;
+        h *= 0x7FEB352D;
+        h ^= h >>> 15;
+        return h;
+    }
+
+    private static Bucket[] newRing(int size) {
+        Bucket[] ring = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Bucket();
+        }
+        return ring;
+    }
+}
@@ -7,6 +7,36 @@ import java.security.cert.X509Certificate;
 
 public class WebCrawlerService {
 
+    // Progress callbacks, made on the crawling thread. Page sizes are characters read.
+    public interface CrawlListener {
+        void crawlStarted(String startUrl);
+
+        void pageFetched(String url, long bytes, String text);
+
+        void pageFailed(String url, String error);
+
+        void crawlFinished(String startUrl, int pages);
+    }
+
+    private static final CrawlListener NO_LISTENER = new CrawlListener() {
+        @Override
+        public void crawlStarted(String startUrl) {
+        }
+
+        @Override
+        public void pageFetched(String url, long bytes, String text) {
+        }
+
+        @Override
+        public void pageFailed(String url, String error) {
+        }
+
+        @Override
+        public void crawlFinished(String startUrl, int pages) {
+        }
+    };
+
+    private volatile CrawlListener listener = NO_LISTENER;
     private Set<String> visitedURLs = new HashSet<>();
     private StringBuilder crawledContent = new StringBuilder();
     private int maxDepth = 1;
@@ -17,6 +47,10 @@ public class WebCrawlerService {
         disableSSLVerification();
     }
 
+    public void setListener(CrawlListener listener) {
+        this.listener = listener != null ? listener : NO_LISTENER;
+    }
+
     public void crawl(String startUrl) {
         // Reset state for new crawl
         visitedURLs.clear();
@@ -24,7 +58,9 @@ public class WebCrawlerService {
         currentPages = 0;
 
         System.out.println("Starting crawl for: " + startUrl);
+        listener.crawlStarted(startUrl);
         crawlURL(startUrl, 0);
+        listener.crawlFinished(startUrl, currentPages);
 
         // Save to a new file (simulated)
         // In a real app, we would append to the data directory
@@ -58,6 +94,7 @@ public class WebCrawlerService {
 
                 String text = extractText(pageContent.toString());
                 crawledContent.append(text).append("\n");
+                listener.pageFetched(urlString, pageContent.length(), text);
 
                 if (depth < maxDepth) {
                     List<String> links = extractLinks(pageContent.toString(), urlString);
@@ -65,10 +102,13 @@ public class WebCrawlerService {
                         crawlURL(link, depth + 1);
                     }
                 }
+            } else {
+                listener.pageFailed(urlString, "HTTP " + connection.getResponseCode());
             }
             connection.disconnect();
         } catch (Exception e) {
             System.out.println("Error crawling " + urlString + ": " + e.getMessage());
+            listener.pageFailed(urlString, String.valueOf(e.getMessage()));
         }
     }
 
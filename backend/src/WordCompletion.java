@@ -25,6 +25,12 @@ public class WordCompletion {
         }
     }
 
+    public void addWords(Collection<String> words) {
+        for (String word : words) {
+            insert(word);
+        }
+    }
+
     private void insert(String word) {
         TrieNode current = root;
         for (char c : word.toCharArray()) {
@@ -1,11 +1,25 @@
-import React, { useState } from 'react';
+import React, { useEffect, useState } from 'react';
 import { Play, CheckCircle, AlertTriangle, Globe, Zap, Info } from 'lucide-react';
-import { api } from '../services/api';
+import { api, CrawlProgress } from '../services/api';
 
 const CrawlerControl: React.FC = () => {
     const [url, setUrl] = useState('');
     const [status, setStatus] = useState<string | null>(null);
     const [loading, setLoading] = useState(false);
+    const [progress, setProgress] = useState<CrawlProgress | null>(null);
+    const [newTerms, setNewTerms] = useState<string[]>([]);
+    const [termCount, setTermCount] = useState(0);
+
+    useEffect(() => {
+        const events = api.subscribeEvents({
+            onCrawl: setProgress,
+            onTerms: (terms, more) => {
+                setNewTerms(prev => [...terms, ...prev].slice(0, 50));
+                setTermCount(prev => prev + terms.length + more);
+            }
+        });
+        return () => events.close();
+    }, []);
 
     const handleCrawl = async (e: React.FormEvent) => {
         e.preventDefault();
@@ -14,8 +28,14 @@ const CrawlerControl: React.FC = () => {
         setLoading(true);
         setStatus(null);
         try {
-            await api.crawl(url);
-            setStatus(`✓ Crawl started successfully! The system is now:\n1. Fetching content from ${url}\n2. Extracting text and plan information\n3. Saving data to CSV file\n4. The data will be available in the project folder`);
+            const result = await api.crawl(url);
+            if (result.error === 'crawl_in_progress') {
+                setStatus('✗ Another crawl is still running. Progress is shown below.');
+                return;
+            }
+            setNewTerms([]);
+            setTermCount(0);
+            setStatus(`✓ Crawl started successfully! The system is now:\n1. Fetching content from ${url}\n2. Indexing each page so it becomes searchable\n3. Saving data to CSV file\n4. Live progress appears below`);
         } catch (error) {
             setStatus('✗ Error starting crawl. Please check the URL and ensure the backend server is running.');
         } finally {
@@ -104,6 +124,25 @@ const CrawlerControl: React.FC = () => {
                     </div>
                 )}
 
+                {progress && (
+                    <div style={{ marginTop: '1.5rem', color: 'var(--text-secondary)' }}>
+                        <div style={{ fontWeight: 600, color: 'var(--text-primary)', marginBottom: '0.5rem' }}>
+                            {progress.running ? 'Crawling' : 'Last crawl'}: {progress.url}
+                        </div>
+                        <div>
+                            {progress.pages} pages · {(progress.bytes / 1024).toFixed(1)} KB · {progress.errors} errors
+                        </div>
+                        {progress.lastError && (
+                            <div style={{ fontSize: '0.8rem', color: 'var(--text-muted)' }}>{progress.lastError}</div>
+                        )}
+                        {newTerms.length > 0 && (
+                            <div style={{ marginTop: '0.5rem', fontSize: '0.85rem' }}>
+                                {termCount} new terms: {newTerms.join(', ')}{termCount > newTerms.length ? ', …' : ''}
+                            </div>
+                        )}
+                    </div>
+                )}
+
                 <div style={{ marginTop: '2rem', paddingTop: '2rem', borderTop: '1px solid var(--border-color)' }}>
                     <h3 style={{ fontSize: '1rem', marginBottom: '1rem', color: 'var(--text-secondary)' }}>
                         Quick Start URLs
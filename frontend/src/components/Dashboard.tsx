@@ -15,6 +15,14 @@ const Dashboard: React.FC = () => {
             setFrequency(freq);
             setHistory(hist);
         }).finally(() => setLoading(false));
+
+        // Top words are pushed whenever the index changes, e.g. during a crawl
+        const events = api.subscribeEvents({
+            onIndex: (stats) => {
+                if (stats.top) setFrequency(stats.top);
+            }
+        });
+        return () => events.close();
     }, []);
 
     if (loading) {
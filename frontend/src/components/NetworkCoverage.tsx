@@ -3,6 +3,7 @@ import { MapContainer, TileLayer, Marker, Popup, useMap } from 'react-leaflet';
 import { Map, Search } from 'lucide-react';
 import 'leaflet/dist/leaflet.css';
 import L from 'leaflet';
+import { api, CoveragePlace } from '../services/api';
 
 // Fix for default marker icon in react-leaflet
 delete (L.Icon.Default.prototype as any)._getIconUrl;
@@ -16,54 +17,6 @@ interface NetworkCoverageProps {
     provider: string;
 }
 
-// Canadian cities for auto-completion
-const CANADIAN_CITIES = [
-    'Toronto, ON',
-    'Montreal, QC',
-    'Vancouver, BC',
-    'Calgary, AB',
-    'Edmonton, AB',
-    'Ottawa, ON',
-    'Winnipeg, MB',
-    'Quebec City, QC',
-    'Hamilton, ON',
-    'Kitchener, ON',
-    'London, ON',
-    'Victoria, BC',
-    'Halifax, NS',
-    'Oshawa, ON',
-    'Windsor, ON',
-    'Saskatoon, SK',
-    'Regina, SK',
-    'St. John\'s, NL',
-    'Barrie, ON',
-    'Kelowna, BC'
-];
-
-// City coordinates for map centering
-const CITY_COORDS: { [key: string]: [number, number] } = {
-    'Toronto, ON': [43.6532, -79.3832],
-    'Montreal, QC': [45.5017, -73.5673],
-    'Vancouver, BC': [49.2827, -123.1207],
-    'Calgary, AB': [51.0447, -114.0719],
-    'Edmonton, AB': [53.5461, -113.4938],
-    'Ottawa, ON': [45.4215, -75.6972],
-    'Winnipeg, MB': [49.8951, -97.1384],
-    'Quebec City, QC': [46.8139, -71.2080],
-    'Hamilton, ON': [43.2557, -79.8711],
-    'Kitchener, ON': [43.4516, -80.4925],
-    'London, ON': [42.9849, -81.2453],
-    'Victoria, BC': [48.4284, -123.3656],
-    'Halifax, NS': [44.6488, -63.5752],
-    'Oshawa, ON': [43.8971, -78.8658],
-    'Windsor, ON': [42.3149, -83.0364],
-    'Saskatoon, SK': [52.1332, -106.6700],
-    'Regina, SK': [50.4452, -104.6189],
-    'St. John\'s, NL': [47.5615, -52.7126],
-    'Barrie, ON': [44.3894, -79.6903],
-    'Kelowna, BC': [49.8880, -119.4960]
-};
-
 // Component to update map view when center changes
 const MapUpdater: React.FC<{ center: [number, number] }> = ({ center }) => {
     const map = useMap();
@@ -75,79 +28,87 @@ const MapUpdater: React.FC<{ center: [number, number] }> = ({ center }) => {
     return null;
 };
 
-const NetworkCoverage: React.FC<NetworkCoverageProps> = () => {
+// Coverage is looked up by the backend within this distance of the chosen place
+const COVERAGE_RADIUS_KM = 25;
+
+const NETWORK_LABELS: { [key: string]: string } = {
+    all: '',
+    '5g': '5G',
+    lte: 'LTE / 4G',
+    '3g': '3G / HSPA+'
+};
+
+const NetworkCoverage: React.FC<NetworkCoverageProps> = ({ provider }) => {
     const [location, setLocation] = React.useState('');
     const [selectedNetwork, setSelectedNetwork] = React.useState('all');
     const [isChecking, setIsChecking] = React.useState(false);
     const [coverageStatus, setCoverageStatus] = React.useState<string | null>(null);
     const [mapCenter, setMapCenter] = React.useState<[number, number]>([43.6532, -79.3832]); // Default: Toronto
-    const [suggestions, setSuggestions] = React.useState<string[]>([]);
+    const [suggestions, setSuggestions] = React.useState<CoveragePlace[]>([]);
     const [showSuggestions, setShowSuggestions] = React.useState(false);
+    const latestPrefix = React.useRef('');
 
-    const handleLocationChange = (value: string) => {
+    const handleLocationChange = async (value: string) => {
         setLocation(value);
+        latestPrefix.current = value;
 
         if (value.length > 1) {
-            const filtered = CANADIAN_CITIES.filter(city =>
-                city.toLowerCase().includes(value.toLowerCase())
-            );
-            setSuggestions(filtered);
-            setShowSuggestions(true);
+            try {
+                const places = await api.suggestPlaces(value);
+                // Ignore answers to prefixes the user has already typed past
+                if (latestPrefix.current !== value) return;
+                setSuggestions(places);
+                setShowSuggestions(true);
+            } catch (e) {
+                setSuggestions([]);
+            }
         } else {
             setSuggestions([]);
             setShowSuggestions(false);
         }
     };
 
-    const selectSuggestion = (city: string) => {
-        setLocation(city);
+    const selectSuggestion = (place: CoveragePlace) => {
+        setLocation(place.label);
         setSuggestions([]);
         setShowSuggestions(false);
-
-        // Update map center if coordinates exist
-        if (CITY_COORDS[city]) {
-            setMapCenter(CITY_COORDS[city]);
-        }
-
-        // Automatically trigger search
-        setTimeout(() => {
-            handleSearchForCity(city);
-        }, 100);
+        checkCoverage(place);
     };
 
-    const handleSearchForCity = (cityName: string) => {
-        if (!cityName.trim()) return;
-
+    const checkCoverage = async (place: CoveragePlace) => {
         setIsChecking(true);
         setCoverageStatus(null);
+        setMapCenter([place.lat, place.lon]);
 
-        // Update map center if it's a known city
-        if (CITY_COORDS[cityName]) {
-            setMapCenter(CITY_COORDS[cityName]);
-        }
-
-        // Simulate network request
-        setTimeout(() => {
-            setIsChecking(false);
-
-            // Generate status based on selected network
-            let status = '';
-            if (selectedNetwork === 'all' || selectedNetwork === '5g') {
-                status = '5G Coverage Available';
-            } else if (selectedNetwork === 'lte') {
-                status = 'LTE / 4G Coverage Available';
-            } else if (selectedNetwork === '3g') {
-                status = '3G / HSPA+ Coverage Available';
+        try {
+            const providers = await api.getProvidersNear(place.lat, place.lon, COVERAGE_RADIUS_KM, selectedNetwork);
+            const network = NETWORK_LABELS[selectedNetwork] || '';
+            const own = providers.find(p => p.provider.toLowerCase() === (provider || '').toLowerCase());
+            if (own) {
+                setCoverageStatus(`${provider} ${network || own.technologies.join(' / ')} Coverage Available`);
+            } else if (providers.length > 0) {
+                setCoverageStatus(`${network ? network + ' ' : ''}Coverage Available from ${providers.map(p => p.provider).join(', ')}`);
             } else {
-                status = 'Coverage Available';
+                setCoverageStatus(`No ${network ? network + ' ' : ''}coverage within ${COVERAGE_RADIUS_KM} km`);
             }
-
-            setCoverageStatus(status);
-        }, 1500);
+        } catch (e) {
+            setCoverageStatus('Coverage lookup failed. Please ensure the backend server is running.');
+        } finally {
+            setIsChecking(false);
+        }
     };
 
-    const handleSearch = () => {
-        handleSearchForCity(location);
+    const handleSearch = async () => {
+        if (!location.trim()) return;
+        // Typed text goes to the best matching place
+        const places = suggestions.length > 0 ? suggestions : await api.suggestPlaces(location, 1).catch(() => []);
+        if (places.length > 0) {
+            setLocation(places[0].label);
+            setShowSuggestions(false);
+            checkCoverage(places[0]);
+        } else {
+            setCoverageStatus(`No place found matching "${location}"`);
+        }
     };
 
     return (
@@ -174,14 +135,14 @@ const NetworkCoverage: React.FC<NetworkCoverageProps> = () => {
 
                         {showSuggestions && suggestions.length > 0 && (
                             <div className="autocomplete-suggestions">
-                                {suggestions.map((city, index) => (
+                                {suggestions.map((place, index) => (
                                     <div
                                         key={index}
                                         className="suggestion-item"
-                                        onClick={() => selectSuggestion(city)}
+                                        onClick={() => selectSuggestion(place)}
                                     >
                                         <Map size={14} />
-                                        <span>{city}</span>
+                                        <span>{place.label}</span>
                                     </div>
                                 ))}
                             </div>
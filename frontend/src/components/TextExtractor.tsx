@@ -1,5 +1,6 @@
 import React, { useState } from 'react';
 import { Upload } from 'lucide-react';
+import { api, ExtractionCounts } from '../services/api';
 
 const TextExtractor: React.FC = () => {
     const [domain, setDomain] = useState('');
@@ -10,54 +11,44 @@ const TextExtractor: React.FC = () => {
         urls: string[]
     } | null>(null);
     const [totalEmails, setTotalEmails] = useState(0);
-
-    const validateEmail = (email: string): boolean => {
-        const regex = /^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\.[a-zA-Z]{2,}$/;
-        return regex.test(email);
-    };
-
-    const extractURL = (text: string): string[] => {
-        const regex = /https?:\/\/[^\s]+/g;
-        return text.match(regex) || [];
-    };
+    const [counts, setCounts] = useState<ExtractionCounts | null>(null);
+    const [running, setRunning] = useState(false);
+    const [error, setError] = useState<string | null>(null);
 
     const handleSubmit = async (e: React.FormEvent) => {
         e.preventDefault();
 
         if (file) {
-            const text = await file.text();
-
-            // Extract emails
-            const emailRegex = /[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\.[a-zA-Z]{2,}/g;
-            let emails = (text.match(emailRegex) || []).map(email => ({
-                value: email,
-                valid: validateEmail(email)
-            }));
-
-            setTotalEmails(emails.length);
-
-            // Filter emails by domain if specified
-            if (domain.trim()) {
-                const domainLower = domain.trim().toLowerCase();
-                emails = emails.filter(email => {
-                    const emailParts = email.value.split('@');
-                    if (emailParts.length !== 2) return false;
-                    const emailDomain = emailParts[1].toLowerCase();
-                    return emailDomain.includes(domainLower);
+            // The backend scans the upload as it streams in, so files far larger than the
+            // browser could hold in memory work. Matches arrive deduplicated; the list is
+            // re-rendered once per scanned block rather than once per match.
+            const emails: { value: string, valid: boolean }[] = [];
+            const phones: { value: string, valid: boolean }[] = [];
+            const urls: string[] = [];
+            setProcessedData({ emails: [], phones: [], urls: [] });
+            setTotalEmails(0);
+            setCounts(null);
+            setError(null);
+            setRunning(true);
+            try {
+                await api.extractText(file, domain.trim(), (event) => {
+                    if (event.type === 'email') {
+                        emails.push({ value: event.value, valid: true });
+                    } else if (event.type === 'phone') {
+                        phones.push({ value: event.value, valid: true });
+                    } else if (event.type === 'url') {
+                        urls.push(event.value);
+                    } else {
+                        setTotalEmails(event.emails);
+                        setCounts(event);
+                        setProcessedData({ emails: [...emails], phones: [...phones], urls: [...urls] });
+                    }
                 });
+            } catch (err) {
+                setError('Extraction failed. Please ensure the backend server is running.');
+            } finally {
+                setRunning(false);
             }
-
-            // Extract phone numbers (always show all)
-            const phoneRegex = /(?:\+?1[-.\s]?)?(?:\(\d{3}\)|\d{3})[-.\s]?\d{3}[-.\s]?\d{4}/g;
-            const phones = (text.match(phoneRegex) || []).map(phone => ({
-                value: phone,
-                valid: true
-            }));
-
-            // Extract URLs (always show all)
-            const urls = extractURL(text);
-
-            setProcessedData({ emails, phones, urls });
         }
     };
 
@@ -95,11 +86,24 @@ const TextExtractor: React.FC = () => {
                         </div>
                     </div>
 
-                    <button type="submit" className="submit-btn" disabled={!file}>
-                        Submit
+                    <button type="submit" className="submit-btn" disabled={!file || running}>
+                        {running ? 'Extracting...' : 'Submit'}
                     </button>
                 </form>
 
+                {error && (
+                    <p style={{ marginTop: '1rem', color: 'var(--text-secondary)' }}>{error}</p>
+                )}
+
+                {counts && (
+                    <p style={{ marginTop: '1rem', color: 'var(--text-secondary)' }}>
+                        Scanned {(counts.bytes / (1024 * 1024)).toFixed(1)} MB
+                        {file ? ` of ${(file.size / (1024 * 1024)).toFixed(1)} MB` : ''}
+                        {counts.elapsedMs !== undefined ? ` in ${(counts.elapsedMs / 1000).toFixed(1)} s` : '...'}
+                        {counts.truncated ? ' (lists show the first 10,000 distinct values of each kind)' : ''}
+                    </p>
+                )}
+
                 {processedData && (
                     <div className="processed-data">
                         <h2 className="processed-title">Processed Data:</h2>
@@ -107,7 +111,8 @@ const TextExtractor: React.FC = () => {
                         <div className="data-section">
                             <h3>Emails Validated {domain && `(filtered by "${domain}")`}</h3>
                             <p style={{ marginBottom: '1rem', color: 'var(--text-secondary)' }}>
-                                Found {totalEmails} total emails in file.
+                                Found {totalEmails} total emails in file
+                                {domain && counts ? `, ${counts.matchingEmails} matching` : ''}.
                             </p>
                             {processedData.emails.length > 0 ? (
                                 processedData.emails.map((email, idx) => (
@@ -2,6 +2,62 @@ import axios from 'axios';
 
 const API_BASE_URL = 'http://localhost:8080/api';
 
+export interface CrawlProgress {
+    url: string;
+    running: boolean;
+    pages: number;
+    bytes: number;
+    errors: number;
+    lastError: string | null;
+}
+
+export interface IndexStats {
+    version: number;
+    terms: number;
+    termsAdded?: number;
+    plans: number;
+    top?: { word: string, count: number }[];
+}
+
+export interface LiveEventHandlers {
+    onCrawl?: (crawl: CrawlProgress | null) => void;
+    onTerms?: (terms: string[], more: number) => void;
+    onIndex?: (stats: IndexStats) => void;
+}
+
+export interface ExtractionCounts {
+    bytes: number;
+    emails: number;
+    matchingEmails: number;
+    phones: number;
+    urls: number;
+    uniqueEmails: number;
+    uniquePhones: number;
+    uniqueUrls: number;
+    truncated: boolean;
+    elapsedMs?: number;
+}
+
+export type ExtractionEvent =
+    | { type: 'email' | 'phone' | 'url', value: string }
+    | ({ type: 'progress' | 'done' } & ExtractionCounts);
+
+export interface CoverageProvider {
+    provider: string;
+    technologies: string[];
+}
+
+export interface CoveragePlace {
+    name: string;
+    province: string;
+    label: string;
+    lat: number;
+    lon: number;
+    population: number;
+    distanceKm?: number;
+    providers: CoverageProvider[];
+}
+
 export const api = {
     search: async (query: string) => {
         const response = await axios.get(`${API_BASE_URL}/search`, { params: { query } });
@@ -27,8 +83,61 @@ export const api = {
         const response = await axios.get(`${API_BASE_URL}/history`);
         return response.data;
     },
+    getTrending: async (window: '5m' | '1h' | '24h' = '5m', limit = 10) => {
+        const response = await axios.get(`${API_BASE_URL}/trending`, { params: { window, limit } });
+        return response.data;
+    },
     getPlans: async () => {
         const response = await axios.get(`${API_BASE_URL}/plans`);
         return response.data;
+    },
+    suggestPlaces: async (prefix: string, limit = 8): Promise<CoveragePlace[]> => {
+        const response = await axios.get(`${API_BASE_URL}/coverage/suggest`, { params: { prefix, limit } });
+        return Array.isArray(response.data) ? response.data : [];
+    },
+    getProvidersNear: async (lat: number, lon: number, radiusKm = 25, network = 'all') => {
+        const response = await axios.get(`${API_BASE_URL}/coverage/providers`, { params: { lat, lon, radiusKm, network } });
+        return (response.data.providers || []) as CoverageProvider[];
+    },
+    // Uploads the file as the request body; results arrive as newline-delimited JSON while
+    // the server is still reading it, and each parsed line is passed to onEvent
+    extractText: async (file: File, domain: string, onEvent: (event: ExtractionEvent) => void) => {
+        const response = await fetch(`${API_BASE_URL}/extract?domain=${encodeURIComponent(domain)}`, {
+            method: 'POST',
+            headers: { 'Content-Type': 'text/plain' },
+            body: file
+        });
+        if (!response.ok || !response.body) {
+            throw new Error(`Extraction failed with status ${response.status}`);
+        }
+        const reader = response.body.pipeThrough(new TextDecoderStream()).getReader();
+        let buffered = '';
+        for (;;) {
+            const { value, done } = await reader.read();
+            if (done) break;
+            buffered += value;
+            const lines = buffered.split('\n');
+            buffered = lines.pop() ?? '';
+            for (const line of lines) {
+                if (line.trim()) onEvent(JSON.parse(line));
+            }
+        }
+    },
+    // Server-Sent Events from /api/events; the browser reconnects on its own and each
+    // connection starts with the full current state. Call close() on the result when done.
+    subscribeEvents: (handlers: LiveEventHandlers) => {
+        const source = new EventSource(`${API_BASE_URL}/events`);
+        source.addEventListener('hello', (e) => {
+            const state = JSON.parse((e as MessageEvent).data);
+            handlers.onCrawl?.(state.crawl);
+            handlers.onIndex?.(state.index);
+        });
+        source.addEventListener('crawl', (e) => handlers.onCrawl?.(JSON.parse((e as MessageEvent).data)));
+        source.addEventListener('terms', (e) => {
+            const batch = JSON.parse((e as MessageEvent).data);
+            handlers.onTerms?.(batch.terms, batch.more);
+        });
+        source.addEventListener('index', (e) => handlers.onIndex?.(JSON.parse((e as MessageEvent).data)));
+        return source;
     }
 };